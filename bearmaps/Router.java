@@ -1,7 +1,16 @@
 package bearmaps;
 
-import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.ContractionHierarchySolver;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.graph.streetmap.EdgeIndex;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -13,6 +22,31 @@ import java.util.regex.Pattern;
  */
 public class Router {
 
+    /** Seconds a single search may run before giving up. */
+    private static final double TIMEOUT = 20;
+
+    /** Search strategies that shortestPath can route with. */
+    public enum Algorithm {
+        /** A* over the compact graph with an indexed, decrease-key fringe. */
+        ASTAR,
+        /** A* over the compact graph with a lazy-deletion fringe. */
+        LAZY_ASTAR,
+        /** Bidirectional A* over the compact graph with average potentials. */
+        BIDIRECTIONAL,
+        /** Bidirectional upward search on the graph's contraction hierarchy. */
+        CH,
+        /** A* over the compact graph guided by the graph's landmark heuristic. */
+        ALT
+    }
+
+    /** How shortestPath places the start and destination locations on the graph. */
+    public enum Snap {
+        /** Route between the nodes closest to the two locations. */
+        VERTEX,
+        /** Route between the closest points on the closest roads, part way along edges. */
+        EDGE
+    }
+
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
      * and returns a List of longs representing the shortest path from the node
@@ -26,10 +60,160 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, Algorithm.ASTAR);
+    }
+
+    /**
+     * Same as shortestPath above, but routes with the given ALGORITHM.
+     * @param algorithm The search strategy to use.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat, Algorithm algorithm) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        return solver(g, src, dest, algorithm).solution();
+    }
+
+    /**
+     * Same as shortestPath above, but places the two locations on the graph as given by
+     * SNAP. With Snap.EDGE the search always runs as A* from both ends of the start's edge
+     * to both ends of the destination's edge, so ALGORITHM is ignored. The returned nodes
+     * begin and end with the edge endpoints the route passes through.
+     * @param algorithm The search strategy to use with Snap.VERTEX.
+     * @param snap How to place the locations on the graph.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat, Algorithm algorithm,
+                                          Snap snap) {
+        if (snap == Snap.VERTEX) {
+            return shortestPath(g, stlon, stlat, destlon, destlat, algorithm);
+        }
+        EdgeIndex.EdgeSnap start = g.edgeIndex().nearest(stlon, stlat);
+        EdgeIndex.EdgeSnap dest = g.edgeIndex().nearest(destlon, destlat);
+        if (start == null || dest == null) {
+            return new ArrayList<>();
+        }
+        return edgeSolver(g, start, dest).solution();
+    }
+
+    /**
+     * Runs A* between the points START and DEST, which lie part way along edges of G, and
+     * returns the finished solver. If both lie on the same edge and the direct stretch
+     * of road between them is shortest, the solution is just that edge's two endpoints in
+     * travel order.
+     */
+    public static ShortestPathsSolver<Long> edgeSolver(AugmentedStreetMapGraph g,
+                                                      EdgeIndex.EdgeSnap start,
+                                                      EdgeIndex.EdgeSnap dest) {
+        CompactStreetMapGraph compact = g.compactGraph();
+        IntAStarSolver solver = new IntAStarSolver(compact,
+                new int[]{start.from(), start.to()},
+                new double[]{start.fraction() * start.weight(),
+                        (1 - start.fraction()) * start.weight()},
+                new int[]{dest.from(), dest.to()},
+                new double[]{dest.fraction() * dest.weight(),
+                        (1 - dest.fraction()) * dest.weight()},
+                TIMEOUT, SearchWorkspace.forCurrentThread(compact.size()),
+                compact::estimatedDistance);
+        if (start.sameEdge(dest)) {
+            double direct = Math.abs(dest.fraction() - start.fraction()) * start.weight();
+            if (solver.outcome() != SolverOutcome.SOLVED || direct <= solver.solutionWeight()) {
+                return new DirectSolution(compact, start, dest, direct);
+            }
+        }
+        return solver;
+    }
+
+    /* The trivial solution for two points on the same edge with nothing shorter between
+       them than the road that joins them directly. */
+    private static class DirectSolution implements ShortestPathsSolver<Long> {
+        private final List<Long> solution = new ArrayList<>();
+        private final double weight;
+
+        DirectSolution(CompactStreetMapGraph g, EdgeIndex.EdgeSnap start,
+                       EdgeIndex.EdgeSnap dest, double weight) {
+            boolean forward = start.fraction() <= dest.fraction();
+            solution.add(g.id(forward ? start.from() : start.to()));
+            solution.add(g.id(forward ? start.to() : start.from()));
+            this.weight = weight;
+        }
 
+        public SolverOutcome outcome() {
+            return SolverOutcome.SOLVED;
+        }
+
+        public List<Long> solution() {
+            return solution;
+        }
+
+        public double solutionWeight() {
+            return weight;
+        }
+
+        public int numStatesExplored() {
+            return 0;
+        }
+
+        public double explorationTime() {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the matrix of shortest-path distances from every source location to every
+     * destination location. Each location is snapped to its closest node once, and each
+     * source is swept with a single one-to-many search.
+     * @param g The graph to use.
+     * @param srclons The longitudes of the source locations.
+     * @param srclats The latitudes of the source locations, parallel to srclons.
+     * @param destlons The longitudes of the destination locations.
+     * @param destlats The latitudes of the destination locations, parallel to destlons.
+     * @param withPaths Whether to also keep the node ids of every shortest path.
+     * @return The distance matrix, with sources as rows and destinations as columns.
+     */
+    public static DistanceMatrix distanceMatrix(AugmentedStreetMapGraph g,
+                                                double[] srclons, double[] srclats,
+                                                double[] destlons, double[] destlats,
+                                                boolean withPaths) {
+        long[] sources = new long[srclons.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = g.closest(srclons[i], srclats[i]);
+        }
+        long[] targets = new long[destlons.length];
+        for (int j = 0; j < targets.length; j++) {
+            targets[j] = g.closest(destlons[j], destlats[j]);
+        }
+        return new DistanceMatrix(g.compactGraph(), sources, targets, withPaths);
+    }
+
+    /**
+     * Runs ALGORITHM from vertex SRC to vertex DEST of G and returns the finished solver,
+     * for callers that also want its weight or statistics.
+     */
+    public static ShortestPathsSolver<Long> solver(AugmentedStreetMapGraph g, long src, long dest,
+                                                  Algorithm algorithm) {
+        CompactStreetMapGraph compact = g.compactGraph();
+        SearchWorkspace workspace = SearchWorkspace.forCurrentThread(compact.size());
+        switch (algorithm) {
+            case BIDIRECTIONAL:
+                return new BidirectionalAStarSolver(compact, src, dest, TIMEOUT, workspace,
+                        SearchWorkspace.forCurrentThread(compact.size(), 1));
+            case CH:
+                return new ContractionHierarchySolver(g.contractionHierarchy(), src, dest,
+                        TIMEOUT, workspace, SearchWorkspace.forCurrentThread(compact.size(), 1));
+            case ALT:
+                return new IntAStarSolver(compact, src, dest, TIMEOUT, workspace,
+                        IntAStarSolver.Fringe.DECREASE_KEY, g.landmarks());
+            case LAZY_ASTAR:
+                return new IntAStarSolver(compact, src, dest, TIMEOUT, workspace,
+                        IntAStarSolver.Fringe.LAZY_DELETION);
+            case ASTAR:
+            default:
+                return new IntAStarSolver(compact, src, dest, TIMEOUT, workspace,
+                        IntAStarSolver.Fringe.DECREASE_KEY);
+        }
     }
 
     /**
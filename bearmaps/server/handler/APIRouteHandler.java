@@ -84,4 +84,91 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         }
         return params;
     }
+
+    /**
+     * Validate & return the required request parameter NAME as a list of coordinates
+     * written "x1,y1;x2,y2;...". Halts if it is missing, empty or malformed, or if it
+     * holds more than MAXCOUNT coordinates.
+     * @param req HTTP Request.
+     * @param name Name of the parameter.
+     * @param maxCount Largest number of coordinates accepted.
+     * @return One {x, y} array per coordinate pair, in order.
+     */
+    protected double[][] getCoordinateListParam(spark.Request req, String name, int maxCount) {
+        String value = req.queryParams(name);
+        if (value == null || value.isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+            return new double[0][];
+        }
+        String[] pairs = value.split(";");
+        if (pairs.length > maxCount) {
+            halt(HALT_RESPONSE, "Incorrect parameters - " + name + " may list at most "
+                    + maxCount + " locations.");
+            return new double[0][];
+        }
+        double[][] coords = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] xy = pairs[i].split(",");
+            if (xy.length != 2) {
+                halt(HALT_RESPONSE, "Incorrect parameters - " + name + " must be x,y;x,y;...");
+                return new double[0][];
+            }
+            try {
+                coords[i] = new double[]{Double.parseDouble(xy[0].trim()),
+                        Double.parseDouble(xy[1].trim())};
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                return new double[0][];
+            }
+        }
+        return coords;
+    }
+
+    /**
+     * Reads the optional request parameter NAME as a constant of the enum TYPE, ignoring
+     * case. Returns FALLBACK if the parameter is absent, and halts if it names no constant.
+     * @param req HTTP Request.
+     * @param name Name of the parameter.
+     * @param type Enum class the value must belong to.
+     * @param fallback Value to use when the parameter is missing.
+     * @return The parsed enum constant.
+     */
+    protected <E extends Enum<E>> E getEnumParam(
+            spark.Request req, String name, Class<E> type, E fallback) {
+        String value = req.queryParams(name);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - unknown " + name + " " + value + ".");
+            return fallback;
+        }
+    }
+
+    /**
+     * Reads the optional request parameter NAME as a non-negative integer. Returns
+     * FALLBACK if the parameter is absent, and halts if it is not such a number.
+     * @param req HTTP Request.
+     * @param name Name of the parameter.
+     * @param fallback Value to use when the parameter is missing.
+     * @return The parsed integer.
+     */
+    protected int getIntParam(spark.Request req, String name, int fallback) {
+        String value = req.queryParams(name);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to halt below
+        }
+        halt(HALT_RESPONSE, "Incorrect parameters - " + name + " must be a whole number.");
+        return fallback;
+    }
 }
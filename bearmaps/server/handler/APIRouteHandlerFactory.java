@@ -18,10 +18,14 @@ public class APIRouteHandlerFactory {
 
     static {
         handlerMap = new HashMap<>();
-        handlerMap.put("raster", new RasterAPIHandler());
+        RasterAPIHandler raster = new RasterAPIHandler();
+        handlerMap.put("raster", raster);
+        handlerMap.put("raster_stats", new RasterStatsAPIHandler(raster));
         handlerMap.put("route", new RoutingAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("search_stats", new SearchStatsAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
@@ -0,0 +1,116 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.Router;
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.DistanceMatrix;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+/**
+ * Handles requests for the shortest-path distances between every one of a set of source
+ * locations and every one of a set of target locations, e.g. to cost delivery rounds.
+ * Unlike /route this does not touch the route drawn on the map.
+ */
+public class DistanceMatrixAPIHandler extends APIRouteHandler<DistanceMatrixAPIHandler.MatrixQuery,
+        Map<String, Object>> {
+
+    /**
+     * Each request has the required parameters sources and targets, each a list of
+     * locations written "lon,lat;lon,lat;...", and the optional parameter paths, which
+     * asks for the node ids of every path when it is "true".
+     */
+    private static final String SOURCES_PARAM = "sources";
+    private static final String TARGETS_PARAM = "targets";
+    private static final String PATHS_PARAM = "paths";
+
+    /* Most locations accepted in sources, and separately in targets, so that one request
+       cannot tie up the server with a huge matrix. */
+    private static final int MAX_LOCATIONS = 100;
+
+    /** Parsed request: source and target {lon, lat} pairs and whether to return paths. */
+    static class MatrixQuery {
+        private final double[][] sources;
+        private final double[][] targets;
+        private final boolean withPaths;
+
+        MatrixQuery(double[][] sources, double[][] targets, boolean withPaths) {
+            this.sources = sources;
+            this.targets = targets;
+            this.withPaths = withPaths;
+        }
+    }
+
+    @Override
+    protected MatrixQuery parseRequestParams(Request request) {
+        return new MatrixQuery(getCoordinateListParam(request, SOURCES_PARAM, MAX_LOCATIONS),
+                getCoordinateListParam(request, TARGETS_PARAM, MAX_LOCATIONS),
+                Boolean.parseBoolean(request.queryParams(PATHS_PARAM)));
+    }
+
+    /**
+     * Snaps every location to its closest node and computes the distance matrix.
+     *
+     * @param query The parsed source and target locations.
+     * @param response : Not used by this function. You may ignore.
+     * @return A map of results for the front end as specified: <br>
+     * "sources" : List of the node ids the source locations snapped to. <br>
+     * "targets" : List of the node ids the target locations snapped to. <br>
+     * "distances" : One row per source holding the distance to each target, or null if
+     *               the target cannot be reached. <br>
+     * "paths" : Only if paths=true. One row per source holding the list of node ids on the
+     *           path to each target, empty if the target cannot be reached.
+     */
+    @Override
+    protected Map<String, Object> processRequest(MatrixQuery query, Response response) {
+        DistanceMatrix matrix = Router.distanceMatrix(SEMANTIC_STREET_GRAPH,
+                column(query.sources, 0), column(query.sources, 1),
+                column(query.targets, 0), column(query.targets, 1), query.withPaths);
+
+        List<Long> sourceIds = new ArrayList<>();
+        List<List<Double>> distances = new ArrayList<>();
+        List<List<List<Long>>> paths = new ArrayList<>();
+        for (int i = 0; i < matrix.numSources(); i++) {
+            sourceIds.add(matrix.source(i));
+            List<Double> row = new ArrayList<>();
+            List<List<Long>> pathRow = new ArrayList<>();
+            for (int j = 0; j < matrix.numTargets(); j++) {
+                double d = matrix.distance(i, j);
+                row.add(Double.isInfinite(d) ? null : d);
+                if (query.withPaths) {
+                    pathRow.add(matrix.path(i, j));
+                }
+            }
+            distances.add(row);
+            paths.add(pathRow);
+        }
+        List<Long> targetIds = new ArrayList<>();
+        for (int j = 0; j < matrix.numTargets(); j++) {
+            targetIds.add(matrix.target(j));
+        }
+
+        Map<String, Object> matrixParams = new HashMap<>();
+        matrixParams.put("sources", sourceIds);
+        matrixParams.put("targets", targetIds);
+        matrixParams.put("distances", distances);
+        if (query.withPaths) {
+            matrixParams.put("paths", paths);
+        }
+        return matrixParams;
+    }
+
+    /* Returns entry K of every pair in COORDS. */
+    private static double[] column(double[][] coords, int k) {
+        double[] values = new double[coords.length];
+        for (int i = 0; i < coords.length; i++) {
+            values[i] = coords[i][k];
+        }
+        return values;
+    }
+}
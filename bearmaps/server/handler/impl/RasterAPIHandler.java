@@ -2,6 +2,7 @@ package bearmaps.server.handler.impl;
 
 import bearmaps.AugmentedStreetMapGraph;
 import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.LruCache;
 import spark.Request;
 import spark.Response;
 import bearmaps.utils.Constants;
@@ -9,6 +10,7 @@ import bearmaps.utils.Constants;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -45,6 +47,36 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     private static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
             "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
+    /**
+     * Decoded tiles by file path, which names their depth, x and y. Panning mostly asks for
+     * tiles the last few requests already drew, and decoding a PNG costs far more than
+     * drawing it, so getImage decodes each tile once while it stays in the cache.
+     */
+    private final LruCache<String, BufferedImage> tiles;
+
+    public RasterAPIHandler() {
+        this(Constants.TILE_CACHE_BYTES);
+    }
+
+    /**
+     * Same as above, but the tile cache holds at most CACHEBYTES of decoded pixels; 0
+     * turns it off.
+     */
+    public RasterAPIHandler(long cacheBytes) {
+        tiles = new LruCache<>(Integer.MAX_VALUE, cacheBytes, RasterAPIHandler::imageBytes);
+    }
+
+    /* Returns the bytes of pixel data held by IMG. */
+    private static long imageBytes(BufferedImage img) {
+        DataBuffer data = img.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks()
+                * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    /** Returns the size, hit and miss counters of the tile cache. */
+    public Map<String, Object> tileCacheStats() {
+        return tiles.stats();
+    }
 
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
@@ -301,11 +333,14 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     }
 
     private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
+        BufferedImage tileImg = tiles.get(imgPath);
         if (tileImg == null) {
             try {
                 File in = new File(imgPath);
                 tileImg = ImageIO.read(in);
+                if (tileImg != null) {
+                    tiles.put(imgPath, tileImg);
+                }
             } catch (IOException | NullPointerException e) {
                 e.printStackTrace();
             }
@@ -0,0 +1,30 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.Map;
+
+/**
+ * Reports the decoded tile cache of a RasterAPIHandler: entries and bytes against the
+ * byte bound, hits, misses, evictions and the hit rate so far.
+ */
+public class RasterStatsAPIHandler extends APIRouteHandler<Object, Map<String, Object>> {
+
+    private final RasterAPIHandler raster;
+
+    public RasterStatsAPIHandler(RasterAPIHandler raster) {
+        this.raster = raster;
+    }
+
+    @Override
+    protected Object parseRequestParams(Request request) {
+        return null;
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(Object requestParams, Response response) {
+        return raster.tileCacheStats();
+    }
+}
@@ -17,7 +17,8 @@ import static bearmaps.utils.Constants.ROUTE_LIST;
  * route will be returned as image data, as well as (optionally) driving directions. *
  * Created by rahul
  */
-public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+public class RoutingAPIHandler extends APIRouteHandler<RoutingAPIHandler.RouteQuery,
+        Map<String, Object>> {
 
     /**
      * Each route request to the server will have the following parameters
@@ -28,9 +29,37 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
             "end_lat", "end_lon"};
 
+    /**
+     * Optional parameter naming the Router.Algorithm to route with, case-insensitively,
+     * e.g. algorithm=bidirectional or algorithm=ch. Defaults to Router.Algorithm.ASTAR.
+     */
+    private static final String ALGORITHM_PARAM = "algorithm";
+
+    /**
+     * Optional parameter naming the Router.Snap that places the endpoints on the graph,
+     * case-insensitively, e.g. snap=edge. Defaults to Router.Snap.VERTEX.
+     */
+    private static final String SNAP_PARAM = "snap";
+
+    /** Parsed request: the endpoint coordinates, routing algorithm and snapping mode. */
+    static class RouteQuery {
+        private final Map<String, Double> coords;
+        private final Router.Algorithm algorithm;
+        private final Router.Snap snap;
+
+        RouteQuery(Map<String, Double> coords, Router.Algorithm algorithm, Router.Snap snap) {
+            this.coords = coords;
+            this.algorithm = algorithm;
+            this.snap = snap;
+        }
+    }
+
     @Override
-    protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+    protected RouteQuery parseRequestParams(Request request) {
+        return new RouteQuery(getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS),
+                getEnumParam(request, ALGORITHM_PARAM, Router.Algorithm.class,
+                        Router.Algorithm.ASTAR),
+                getEnumParam(request, SNAP_PARAM, Router.Snap.class, Router.Snap.VERTEX));
     }
 
     /**
@@ -46,7 +75,8 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * value to this function.
      *
      * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/long
-     *                      and the destination lat/lon.
+     *                      and the destination lat/lon - with the routing algorithm and
+     *                      snapping mode.
      *
      * @param response : Not used by this function. You may ignore.
      * @return A map of results for the front end as specified: <br>
@@ -57,11 +87,13 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * "directions"      : String. The text directions you want to display, in HTML format.
      */
     @Override
-    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+    protected Map<String, Object> processRequest(RouteQuery requestParams, Response response) {
+        Map<String, Double> coords = requestParams.coords;
         List<Long> route = Router.shortestPath(
                 SEMANTIC_STREET_GRAPH,
-                requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
+                coords.get("start_lon"), coords.get("start_lat"),
+                coords.get("end_lon"), coords.get("end_lat"),
+                requestParams.algorithm, requestParams.snap);
         ROUTE_LIST.addAll(route);
         String directions = getDirectionsText();
 
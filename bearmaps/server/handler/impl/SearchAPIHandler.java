@@ -1,38 +1,125 @@
 package bearmaps.server.handler.impl;
 
 import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.LruCache;
+import bearmaps.utils.graph.streetmap.NameTable;
 import spark.Request;
 import spark.Response;
-import bearmaps.utils.Tuple;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import static bearmaps.utils.Constants.SEARCH_CACHE_BYTES;
+import static bearmaps.utils.Constants.SEARCH_CACHE_ENTRIES;
 import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
 
 /**
  * Created by rahul
  */
-public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
+public class SearchAPIHandler extends APIRouteHandler<SearchAPIHandler.SearchQuery, Object> {
 
+    /**
+     * Optional parameter capping how many prefix matches are returned, best first. Without
+     * it every match is returned.
+     */
+    private static final String LIMIT_PARAM = "limit";
+
+    /**
+     * Optional parameter for prefix searches: how many typos (inserted, deleted or replaced
+     * characters) a match may have, at most MAX_EDITS. Without it matching is exact.
+     */
+    private static final String FUZZY_PARAM = "fuzzy";
+    private static final int MAX_EDITS = 2;
+
+    /**
+     * Flag parameter: return the locations whose names contain every word of the term, in
+     * any order, instead of prefix matches.
+     */
+    private static final String WORDS_PARAM = "words";
+
+    /**
+     * Serialized JSON responses by search mode, limit, typos and cleaned term. Autocomplete
+     * asks for the same few short prefixes over and over, and the names never change once
+     * the graph is built, so a hit skips both the search and Gson. Strings are weighed as
+     * two bytes a character plus their object headers.
+     */
+    private static final LruCache<String, String> RESPONSES = new LruCache<>(
+            SEARCH_CACHE_ENTRIES, SEARCH_CACHE_BYTES, json -> 2L * json.length() + 56);
+
+    /**
+     * Parsed request: the search term, whether it is a full name or a set of words, the
+     * result limit, and the typos allowed.
+     */
+    static class SearchQuery {
+        private final String term;
+        private final boolean full;
+        private final boolean words;
+        private final int limit;
+        private final int edits;
+
+        SearchQuery(String term, boolean full, boolean words, int limit, int edits) {
+            this.term = term;
+            this.full = full;
+            this.words = words;
+            this.limit = limit;
+            this.edits = edits;
+        }
+
+        /* Returns the key of this query's response in RESPONSES, or null if there is no
+           term. Queries whose terms clean to the same string get the same response. */
+        String cacheKey() {
+            if (term == null) {
+                return null;
+            }
+            char mode = full ? 'f' : words ? 'w' : 'p';
+            return mode + ":" + limit + ":" + edits + ":" + NameTable.clean(term);
+        }
+    }
+
+    /** Answers from RESPONSES when it can, and caches what it computes otherwise. */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        SearchQuery query = parseRequestParams(request);
+        String key = query.cacheKey();
+        String json = key == null ? null : RESPONSES.get(key);
+        if (json == null) {
+            json = (String) buildJsonResponse(processRequest(query, response));
+            if (key != null) {
+                RESPONSES.put(key, json);
+            }
+        }
+        return json;
+    }
+
+    /** Returns the size and hit-rate counters of the response cache. */
+    static Map<String, Object> cacheStats() {
+        return RESPONSES.stats();
+    }
 
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request request) {
-        return new Tuple<>(request.queryParams(), request.queryParams("term"));
+    protected SearchQuery parseRequestParams(Request request) {
+        return new SearchQuery(request.queryParams("term"),
+                request.queryParams().contains("full"),
+                request.queryParams().contains(WORDS_PARAM),
+                getIntParam(request, LIMIT_PARAM, 0),
+                Math.min(getIntParam(request, FUZZY_PARAM, 0), MAX_EDITS));
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> requestParams, Response response) {
-        Set<String> reqParams = requestParams.getFirst();
-        String term = requestParams.getSecond();
+    protected Object processRequest(SearchQuery query, Response response) {
         Object result;
         /* Search for actual location data. */
-        if (reqParams.contains("full")) {
-            result = getLocations(term);
+        if (query.full) {
+            result = getLocations(query.term);
+        } else if (query.words) {
+            /* Search for locations containing all the words. */
+            result = getLocationsByWords(query.term, query.limit);
+        } else if (query.edits > 0) {
+            /* Search for strings nearly prefix matching, closest first. */
+            result = getLocationsByFuzzyPrefix(query.term, query.edits, query.limit);
         } else {
             /* Search for prefix matching strings. */
-            result = getLocationsByPrefix(term);
+            result = getLocationsByPrefix(query.term, query.limit);
         }
         return result;
     }
@@ -49,6 +136,34 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Same as above, but at most <code>limit</code> names, most common names first, or every
+     * name if <code>limit</code> is 0.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Names whose cleaned form starts within <code>maxEdits</code> typos of the cleaned
+     * prefix, closest first, at most <code>limit</code> of them or all if it is 0.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByFuzzyPrefix(prefix, maxEdits, limit);
+    }
+
+    /**
+     * Locations whose cleaned name contains every word of the cleaned <code>query</code>,
+     * at most <code>limit</code> of them or all if it is 0, in the same format as
+     * getLocations.
+     */
+    public List<Map<String, Object>> getLocationsByWords(String query, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByWords(query, limit);
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
@@ -0,0 +1,24 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.Map;
+
+/**
+ * Reports the /search response cache: entries and bytes against their bounds, hits,
+ * misses, evictions and the hit rate so far.
+ */
+public class SearchStatsAPIHandler extends APIRouteHandler<Object, Map<String, Object>> {
+
+    @Override
+    protected Object parseRequestParams(Request request) {
+        return null;
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(Object requestParams, Response response) {
+        return SearchAPIHandler.cacheStats();
+    }
+}
@@ -0,0 +1,444 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.graph.streetmap.EdgeIndex;
+import bearmaps.utils.ps.ArrayKDTree;
+import bearmaps.utils.ps.KDTree;
+import bearmaps.utils.ps.Point;
+import bearmaps.utils.ps.IndexedPointSet;
+import bearmaps.utils.ps.PointSet;
+import bearmaps.utils.ps.PointSetType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Build time, shape and nearest-neighbor latency of the PointSet implementations on the
+ * nodes of a map. Not a JUnit test; run main, optionally with the OSM file as args[0].
+ */
+public class PointSetBenchmark {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int QUERIES = 200000;
+    private static final int BUILDS = 10;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(dbPath);
+        List<Point> points = nodePoints(g.compactGraph());
+        double[][] queries = randomQueries(points, QUERIES, new Random(7));
+
+        compareKDTreeBuilds(points, queries);
+        compareNearest(points, queries);
+        comparePointSetTypes(points, queries);
+        compareDynamicUpdates(points, queries);
+        compareNeighborhoodQueries(points, Arrays.copyOf(queries, 2000));
+        compareBatchSnapping(g, randomQueries(points, 1000000, new Random(13)));
+        compareEdgeSnapping(g, queries);
+    }
+
+    /**
+     * Build cost and query time of the road-segment EdgeIndex, and how far snapped
+     * endpoints land from the clicked location with vertex versus edge snapping.
+     */
+    private static void compareEdgeSnapping(AugmentedStreetMapGraph g, double[][] queries) {
+        long start = System.nanoTime();
+        EdgeIndex index = new EdgeIndex(g.compactGraph());
+        double buildMs = (System.nanoTime() - start) / 1e6;
+        System.out.println(String.format("EdgeIndex: %d segments, %.3f mi cells, built in "
+                + "%.1f ms", index.segmentCount(), index.cellSize(), buildMs));
+
+        double edgeMiles = 0;
+        for (double[] q : queries) {
+            edgeMiles += index.nearest(q[0], q[1]).distance();
+        }
+        start = System.nanoTime();
+        for (double[] q : queries) {
+            edgeMiles += index.nearest(q[0], q[1]).distance();
+        }
+        double edgeNs = (double) (System.nanoTime() - start) / queries.length;
+        edgeMiles /= 2;
+
+        CompactStreetMapGraph compact = g.compactGraph();
+        double vertexMiles = 0;
+        start = System.nanoTime();
+        for (double[] q : queries) {
+            int v = compact.indexOf(g.closest(q[0], q[1]));
+            vertexMiles += Point.distance(new Point(q[0], q[1]),
+                    new Point(compact.lon(v), compact.lat(v)));
+        }
+        double vertexNs = (double) (System.nanoTime() - start) / queries.length;
+        System.out.println(String.format("snap to vertex: %.0f ns/query, %.1f ft from the query "
+                        + "on average; snap to edge: %.0f ns/query, %.1f ft", vertexNs,
+                vertexMiles / queries.length * 5280, edgeNs, edgeMiles / queries.length * 5280));
+    }
+
+    /**
+     * Throughput of snapping many locations with one closest() call each versus the batch
+     * closest() on fork/join pools of 1, 4 and all available cores.
+     */
+    private static void compareBatchSnapping(AugmentedStreetMapGraph g, double[][] queries) {
+        int m = queries.length;
+        double[] lons = new double[m];
+        double[] lats = new double[m];
+        for (int i = 0; i < m; i++) {
+            lons[i] = queries[i][0];
+            lats[i] = queries[i][1];
+        }
+
+        long[] single = new long[m];
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int i = 0; i < m; i++) {
+                single[i] = g.closest(lons[i], lats[i]);
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < m; i++) {
+            single[i] = g.closest(lons[i], lats[i]);
+        }
+        System.out.println(String.format("closest() one at a time: %.2f M points/s",
+                m / ((System.nanoTime() - start) / 1e3)));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, 4, cores}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long[] batch = g.closest(lons, lats, pool);
+            start = System.nanoTime();
+            batch = g.closest(lons, lats, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            System.out.println(String.format("batch closest(), %2d threads on %d cores: "
+                            + "%.2f M points/s, %s", threads, cores, m / seconds / 1e6,
+                    Arrays.equals(single, batch) ? "same ids" : "DIFFERENT ids"));
+        }
+    }
+
+    /**
+     * Time per query of KDTree.kNearest and KDTree.withinRadius versus a brute-force scan
+     * of every point by great-circle distance. The tree ranks points in its Projection, so
+     * near-ties and points right on the circle may differ; for those this reports how many
+     * feet off the worst one was.
+     */
+    private static void compareNeighborhoodQueries(List<Point> points, double[][] queries) {
+        KDTree tree = new KDTree(points);
+        for (int k : new int[]{1, 8, 32}) {
+            Point[] out = new Point[k];
+            double[] dists = new double[k];
+            Point[] bruteOut = new Point[k];
+            double[] bruteDists = new double[k];
+            int wrong = 0;
+            double worst = 0;
+            for (double[] q : queries) {
+                int found = tree.kNearest(q[0], q[1], k, out, dists);
+                bruteKNearest(points, q[0], q[1], k, bruteOut, bruteDists);
+                if (found != k || !Arrays.equals(dists, bruteDists)) {
+                    wrong++;
+                    for (int i = 0; i < k; i++) {
+                        worst = Math.max(worst, Math.abs(dists[i] - bruteDists[i]));
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            for (double[] q : queries) {
+                tree.kNearest(q[0], q[1], k, out, dists);
+            }
+            double treeNs = (double) (System.nanoTime() - start) / queries.length;
+            start = System.nanoTime();
+            for (double[] q : queries) {
+                bruteKNearest(points, q[0], q[1], k, bruteOut, bruteDists);
+            }
+            double bruteNs = (double) (System.nanoTime() - start) / queries.length;
+            System.out.println(String.format("kNearest k=%-2d       KDTree %7.1f us, brute force "
+                    + "%8.1f us, %d mismatches (worst %.4f ft)", k, treeNs / 1e3, bruteNs / 1e3,
+                    wrong, worst * 5280));
+        }
+
+        for (double r : new double[]{0.05, 0.25}) {
+            List<Point> out = new ArrayList<>();
+            long found = 0;
+            int wrong = 0;
+            double worst = 0;
+            for (double[] q : queries) {
+                out.clear();
+                found += tree.withinRadius(q[0], q[1], r, out);
+                List<Point> brute = new ArrayList<>();
+                bruteWithinRadius(points, q[0], q[1], r, brute);
+                HashSet<Point> differ = new HashSet<>(out);
+                if (!differ.equals(new HashSet<>(brute))) {
+                    wrong++;
+                    // points in exactly one of the two answers
+                    for (Point p : brute) {
+                        if (!differ.remove(p)) {
+                            differ.add(p);
+                        }
+                    }
+                    Point goal = new Point(q[0], q[1]);
+                    for (Point p : differ) {
+                        worst = Math.max(worst, Math.abs(Point.distance(p, goal) - r));
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            for (double[] q : queries) {
+                out.clear();
+                tree.withinRadius(q[0], q[1], r, out);
+            }
+            double treeNs = (double) (System.nanoTime() - start) / queries.length;
+            start = System.nanoTime();
+            for (double[] q : queries) {
+                out.clear();
+                bruteWithinRadius(points, q[0], q[1], r, out);
+            }
+            double bruteNs = (double) (System.nanoTime() - start) / queries.length;
+            System.out.println(String.format("withinRadius r=%.2f KDTree %7.1f us, brute force "
+                            + "%8.1f us, %d mismatches (worst %.4f ft), %.1f points/query", r,
+                    treeNs / 1e3, bruteNs / 1e3, wrong, worst * 5280,
+                    (double) found / queries.length));
+        }
+    }
+
+    /* kNearest by scanning every point, keeping the best K sorted by insertion. */
+    private static void bruteKNearest(List<Point> points, double x, double y, int k,
+                                      Point[] out, double[] dists) {
+        Point goal = new Point(x, y);
+        Arrays.fill(dists, Double.POSITIVE_INFINITY);
+        for (Point p : points) {
+            double d = Point.distance(p, goal);
+            if (d < dists[k - 1]) {
+                int i = k - 1;
+                while (i > 0 && dists[i - 1] > d) {
+                    dists[i] = dists[i - 1];
+                    out[i] = out[i - 1];
+                    i--;
+                }
+                dists[i] = d;
+                out[i] = p;
+            }
+        }
+    }
+
+    private static int bruteWithinRadius(List<Point> points, double x, double y, double r,
+                                         List<Point> out) {
+        Point goal = new Point(x, y);
+        int found = 0;
+        for (Point p : points) {
+            if (Point.distance(p, goal) <= r) {
+                out.add(p);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Query time and allocation of nearest() on the pointer-based KDTree versus the flat
+     * ArrayKDTree, and how often each picks a point that is not the great-circle nearest.
+     */
+    private static void compareNearest(List<Point> points, double[][] queries) {
+        KDTree tree = new KDTree(points);
+        ArrayKDTree array = new ArrayKDTree(points);
+        System.out.println(String.format("KDTree      nearest %s, %d bytes/query",
+                timeNearest(tree, queries), bytesPerQuery(tree, queries)));
+        System.out.println(String.format("ArrayKDTree nearest %s, %d bytes/query",
+                timeNearest(array, queries), bytesPerQuery(array, queries)));
+        long sink = 0;
+        for (double[] q : queries) {
+            sink += array.nearestIndex(q[0], q[1]);
+        }
+        long start = System.nanoTime();
+        for (double[] q : queries) {
+            sink += array.nearestIndex(q[0], q[1]);
+        }
+        double ns = (double) (System.nanoTime() - start) / queries.length;
+        System.out.println(String.format("ArrayKDTree nearestIndex %.0f ns/query (checksum %d)",
+                ns, sink));
+
+        int sample = 2000;
+        System.out.println(String.format("not the great-circle nearest in %d queries: "
+                        + "KDTree %s, ArrayKDTree %s", sample,
+                misses(tree, points, queries, sample), misses(array, points, queries, sample)));
+    }
+
+    /**
+     * Build time, nearestIndex() time and accuracy of every PointSetType the street graph
+     * can be configured with. WeirdPointSet scans every point, so it gets 1% of the queries.
+     */
+    private static void comparePointSetTypes(List<Point> points, double[][] queries) {
+        int sample = 2000;
+        for (PointSetType type : PointSetType.values()) {
+            IndexedPointSet set = null;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < BUILDS; i++) {
+                long start = System.nanoTime();
+                set = type.build(points);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double[][] timed = type == PointSetType.WEIRD
+                    ? Arrays.copyOf(queries, queries.length / 100) : queries;
+            long sink = 0;
+            for (double[] q : timed) {
+                sink += set.nearestIndex(q[0], q[1]);
+            }
+            long start = System.nanoTime();
+            for (double[] q : timed) {
+                sink += set.nearestIndex(q[0], q[1]);
+            }
+            double ns = (double) (System.nanoTime() - start) / timed.length;
+            System.out.println(String.format("%-13s build %6.1f ms, nearestIndex %7.0f ns/query "
+                            + "(checksum %d), %d bytes/query, misses in %d: %s", type,
+                    best / 1e6, ns, sink, bytesPerQuery(set, timed), sample,
+                    misses(set, points, queries, sample)));
+        }
+    }
+
+    /**
+     * Cost of keeping a KDTree current through inserts and deletes versus rebuilding it
+     * after every change, and nearest() time and depth once the updates are in. Starts
+     * from 90% of the points, inserts the rest and deletes as many at random.
+     */
+    private static void compareDynamicUpdates(List<Point> points, double[][] queries) {
+        List<Point> shuffled = new ArrayList<>(points);
+        Collections.shuffle(shuffled, new Random(17));
+        int initial = shuffled.size() * 9 / 10;
+        KDTree tree = new KDTree(shuffled.subList(0, initial));
+        System.out.println(String.format("dynamic KDTree: %d points, depth %d, nearest %s",
+                tree.size(), tree.depth(), timeNearest(tree, queries)));
+
+        long start = System.nanoTime();
+        KDTree rebuilt = new KDTree(shuffled);
+        double rebuildMs = (System.nanoTime() - start) / 1e6;
+
+        Random random = new Random(19);
+        int updates = 0;
+        start = System.nanoTime();
+        for (int i = initial; i < shuffled.size(); i++) {
+            tree.insert(shuffled.get(i));
+            tree.delete(shuffled.get(random.nextInt(i)));
+            updates += 2;
+        }
+        double updateUs = (System.nanoTime() - start) / 1e3 / updates;
+        System.out.println(String.format("%d updates at %.2f us each (rebuilding takes %.1f ms); "
+                        + "after: %d points, depth %d, nearest %s", updates, updateUs, rebuildMs,
+                tree.size(), tree.depth(), timeNearest(tree, queries)));
+        System.out.println(String.format("rebuilt from scratch: depth %d, nearest %s",
+                rebuilt.depth(), timeNearest(rebuilt, queries)));
+    }
+
+    private static long bytesPerQuery(PointSet set, double[][] queries) {
+        return RoutingBenchmark.allocatedBytes(() -> {
+            for (double[] q : queries) {
+                set.nearest(q[0], q[1]);
+            }
+        }) / queries.length;
+    }
+
+    /* Counts the first SAMPLE queries whose answer from SET is farther than the brute-force
+       nearest point, and reports the largest excess distance in feet. */
+    private static String misses(PointSet set, List<Point> points, double[][] queries,
+                                 int sample) {
+        int misses = 0;
+        double worst = 0;
+        for (int i = 0; i < sample; i++) {
+            Point goal = new Point(queries[i][0], queries[i][1]);
+            double best = Double.POSITIVE_INFINITY;
+            for (Point p : points) {
+                best = Math.min(best, Point.distance(p, goal));
+            }
+            double got = Point.distance(set.nearest(goal.getX(), goal.getY()), goal);
+            if (got > best) {
+                misses++;
+                worst = Math.max(worst, got - best);
+            }
+        }
+        return String.format("%d (worst +%.4f ft)", misses, worst * 5280);
+    }
+
+    /**
+     * Depth, build time and query time of the balanced bulk-loaded KDTree versus one
+     * built by insert() one point at a time, in hash order as AugmentedStreetMapGraph
+     * used to add them, and in random order.
+     */
+    private static void compareKDTreeBuilds(List<Point> points, double[][] queries) {
+        List<Point> hashOrder = new ArrayList<>(new HashSet<>(points));
+        List<Point> shuffled = new ArrayList<>(points);
+        Collections.shuffle(shuffled, new Random(11));
+        reportKDTree("inserted, hash order", () -> inserted(hashOrder), queries);
+        reportKDTree("inserted, random order", () -> inserted(shuffled), queries);
+        reportKDTree("bulk-loaded, hash order", () -> new KDTree(hashOrder), queries);
+        reportKDTree("bulk-loaded, random order", () -> new KDTree(shuffled), queries);
+        KDTree sorted = new KDTree(points);
+        System.out.println(String.format("bulk-loaded from %d points in id order: depth %d "
+                + "(bound %d)", points.size(), sorted.depth(),
+                32 - Integer.numberOfLeadingZeros(points.size())));
+    }
+
+    /** Returns a KDTree of the first of POINTS with the rest added by insert(), in order. */
+    private static KDTree inserted(List<Point> points) {
+        KDTree tree = new KDTree(points.subList(0, 1));
+        for (Point p : points.subList(1, points.size())) {
+            tree.insert(p);
+        }
+        return tree;
+    }
+
+    private static void reportKDTree(String name, Supplier<KDTree> factory, double[][] queries) {
+        KDTree tree = null;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < BUILDS; i++) {
+            long start = System.nanoTime();
+            tree = factory.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-28s depth %3d, build %6.1f ms, nearest %s",
+                name, tree.depth(), best / 1e6, timeNearest(tree, queries)));
+    }
+
+    /** Returns the average time of one nearest() call over QUERIES, after a warm-up pass. */
+    private static String timeNearest(PointSet set, double[][] queries) {
+        double checksum = 0;
+        for (double[] q : queries) {
+            checksum += set.nearest(q[0], q[1]).getX();
+        }
+        long start = System.nanoTime();
+        for (double[] q : queries) {
+            checksum += set.nearest(q[0], q[1]).getX();
+        }
+        double ns = (double) (System.nanoTime() - start) / queries.length;
+        return String.format("%.0f ns/query (checksum %.3f)", ns, checksum);
+    }
+
+    /** Returns one Point per vertex of G, in increasing OSM id order. */
+    private static List<Point> nodePoints(CompactStreetMapGraph g) {
+        List<Point> points = new ArrayList<>(g.size());
+        for (int v = 0; v < g.size(); v++) {
+            points.add(new Point(g.lon(v), g.lat(v)));
+        }
+        return points;
+    }
+
+    /** Returns COUNT {lon, lat} pairs uniform over the bounding box of POINTS. */
+    private static double[][] randomQueries(List<Point> points, int count, Random random) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Point p : points) {
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+            minY = Math.min(minY, p.getY());
+            maxY = Math.max(maxY, p.getY());
+        }
+        double[][] queries = new double[count][];
+        for (int i = 0; i < count; i++) {
+            queries[i] = new double[]{minX + random.nextDouble() * (maxX - minX),
+                    minY + random.nextDouble() * (maxY - minY)};
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,118 @@
+package bearmaps.test;
+
+import bearmaps.server.handler.impl.RasterAPIHandler;
+import bearmaps.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Latency of raster requests with and without the decoded tile cache, on a replayed
+ * panning session. Not a JUnit test; run main from the project directory so that
+ * Constants.IMG_ROOT finds the tile images.
+ */
+public class RasterBenchmark {
+    private static final int REQUESTS = 300;
+    private static final double WIDTH_PX = 1000;
+    private static final double HEIGHT_PX = 700;
+
+    public static void main(String[] args) {
+        List<Map<String, Double>> session = panningSession(new Random(25));
+
+        // the first pass of each warms the JIT and, for the cached handler, the cache
+        Renderer uncached = new Renderer(0);
+        Renderer cached = new Renderer(Constants.TILE_CACHE_BYTES);
+        int differ = 0;
+        for (Map<String, Double> params : session.subList(0, 20)) {
+            if (!uncached.render(params).equals(cached.render(params))) {
+                differ++;
+            }
+        }
+        cached = new Renderer(Constants.TILE_CACHE_BYTES);
+
+        double uncachedMs = replay(uncached, session);
+        double cachedMs = replay(cached, session);
+        Map<String, Object> stats = cached.tileCacheStats();
+        System.out.println(String.format("%d panning requests of %.0fx%.0f px: uncached %.1f ms, "
+                        + "cached %.1f ms per request; %d of 20 responses differ",
+                session.size(), WIDTH_PX, HEIGHT_PX, uncachedMs, cachedMs, differ));
+        System.out.println("tile cache: " + stats);
+    }
+
+    /* Returns the mean milliseconds RENDERER takes per request of SESSION. */
+    private static double replay(Renderer renderer, List<Map<String, Double>> session) {
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (Map<String, Double> params : session) {
+            bytes += renderer.render(params).length();
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / session.size();
+        if (bytes == 0) {
+            System.out.println("no tiles were drawn; check Constants.IMG_ROOT");
+        }
+        return ms;
+    }
+
+    /**
+     * A user dragging the map around: each request moves the viewport by a tenth to a
+     * third of its size in a direction that drifts slowly, and about one in twenty zooms
+     * in or out a level, staying inside the root tile.
+     */
+    private static List<Map<String, Double>> panningSession(Random random) {
+        double rootWidth = Constants.ROOT_LRLON - Constants.ROOT_ULLON;
+        double rootHeight = Constants.ROOT_ULLAT - Constants.ROOT_LRLAT;
+        // a quarter of the root's width fits a depth 4 raster into the window
+        double width = rootWidth / 4;
+        double centerLon = Constants.ROOT_ULLON + rootWidth / 2;
+        double centerLat = Constants.ROOT_LRLAT + rootHeight / 2;
+        double heading = 0;
+
+        List<Map<String, Double>> session = new ArrayList<>();
+        while (session.size() < REQUESTS) {
+            if (random.nextInt(20) == 0) {
+                width = width < rootWidth / 6 ? width * 2 : width / 2;
+            }
+            double height = width * HEIGHT_PX / WIDTH_PX * rootHeight / rootWidth;
+            heading += random.nextGaussian() * 0.5;
+            double step = 0.1 + random.nextDouble() * 0.23;
+            centerLon += Math.cos(heading) * step * width;
+            centerLat += Math.sin(heading) * step * height;
+            if (centerLon - width / 2 < Constants.ROOT_ULLON
+                    || centerLon + width / 2 > Constants.ROOT_LRLON) {
+                heading = Math.PI - heading;
+                centerLon = Math.min(Math.max(centerLon, Constants.ROOT_ULLON + width / 2),
+                        Constants.ROOT_LRLON - width / 2);
+            }
+            if (centerLat - height / 2 < Constants.ROOT_LRLAT
+                    || centerLat + height / 2 > Constants.ROOT_ULLAT) {
+                heading = -heading;
+                centerLat = Math.min(Math.max(centerLat, Constants.ROOT_LRLAT + height / 2),
+                        Constants.ROOT_ULLAT - height / 2);
+            }
+
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", centerLon - width / 2);
+            params.put("lrlon", centerLon + width / 2);
+            params.put("ullat", centerLat + height / 2);
+            params.put("lrlat", centerLat - height / 2);
+            params.put("w", WIDTH_PX);
+            params.put("h", HEIGHT_PX);
+            session.add(params);
+        }
+        return session;
+    }
+
+    /* Exposes the handler's whole response, tiles drawn and encoded, without Spark. */
+    private static class Renderer extends RasterAPIHandler {
+        Renderer(long cacheBytes) {
+            super(cacheBytes);
+        }
+
+        String render(Map<String, Double> params) {
+            return (String) buildJsonResponse(processRequest(params, null));
+        }
+    }
+}
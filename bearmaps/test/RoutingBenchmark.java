@@ -0,0 +1,426 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.ContractionHierarchy;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.LandmarkHeuristic;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.WeightedEdge;
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.pq.ArrayHeapPQ;
+import bearmaps.utils.pq.DoubleMapPQ;
+import bearmaps.utils.pq.IndexedDoubleHeap;
+import bearmaps.utils.pq.MinHeapPQ;
+import bearmaps.utils.pq.PriorityQueue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Ad-hoc measurements for the routing data structures. Not a unit test; run main() by hand
+ * against the berkeley-2019 extract. Numbers are only meaningful relative to each other.
+ */
+public class RoutingBenchmark {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final String PARAMS_FILE = "../library-su19/data/proj3_test_inputs/path_params.txt";
+    private static final int NUM_TESTS = 8;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        String paramsPath = args.length > 1 ? args[1] : PARAMS_FILE;
+        comparePriorityQueues();
+        compareGraphMemory(dbPath);
+
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(dbPath);
+        double[][] queries = queriesFromFile(paramsPath);
+        compareNeighborAllocation(g, queries);
+        compareSolvers(g, queries);
+        compareWorkspaces(g, queries);
+        reportContractionHierarchy(g);
+        compareLandmarkCounts(g, queries, new int[]{1, 2, 4, 8, 16, 32});
+        compareAlgorithms(g, queries, Router.Algorithm.values());
+        compareDistanceMatrix(g, 20);
+    }
+
+    /**
+     * Time to cost SIDE x SIDE random location pairs with one Router.shortestPath call per
+     * pair versus a single Router.distanceMatrix call, checking that the weights agree.
+     */
+    private static void compareDistanceMatrix(AugmentedStreetMapGraph g, int side) {
+        CompactStreetMapGraph compact = g.compactGraph();
+        Random random = new Random(42);
+        double[][] lons = new double[2][side];
+        double[][] lats = new double[2][side];
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < side; i++) {
+                int v = random.nextInt(compact.size());
+                lons[k][i] = compact.lon(v);
+                lats[k][i] = compact.lat(v);
+            }
+        }
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            Router.distanceMatrix(g, lons[0], lats[0], lons[1], lats[1], false);
+        }
+        long start = System.nanoTime();
+        DistanceMatrix matrix = Router.distanceMatrix(g, lons[0], lats[0], lons[1], lats[1],
+                false);
+        double matrixMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        DistanceMatrix withPaths = Router.distanceMatrix(g, lons[0], lats[0], lons[1], lats[1],
+                true);
+        double pathsMs = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                Router.shortestPath(g, lons[0][i], lats[0][i], lons[1][j], lats[1][j]);
+            }
+        }
+        double pairsMs = (System.nanoTime() - start) / 1e6;
+
+        int wrong = 0;
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                ShortestPathsSolver<Long> solver = Router.solver(g, matrix.source(i),
+                        matrix.target(j), Router.Algorithm.ASTAR);
+                if (Math.abs(solver.solutionWeight() - matrix.distance(i, j)) > 1e-9
+                        || Math.abs(solver.solutionWeight() - withPaths.distance(i, j)) > 1e-9) {
+                    wrong++;
+                }
+            }
+        }
+        System.out.println(String.format("%dx%d matrix: %.1f ms (%.1f ms with paths) on %d cores "
+                        + "vs %.1f ms for pairwise shortestPath, %d mismatches", side, side,
+                matrixMs, pathsMs, Runtime.getRuntime().availableProcessors(), pairsMs, wrong));
+    }
+
+    /** Builds the contraction hierarchy and reports its preprocessing statistics. */
+    private static void reportContractionHierarchy(AugmentedStreetMapGraph g) {
+        ContractionHierarchy ch = g.contractionHierarchy();
+        System.out.println(String.format("contraction hierarchy: %.2f s on %d cores, "
+                        + "%d shortcuts (%d original edges), %d rounds",
+                ch.buildSeconds(), Runtime.getRuntime().availableProcessors(),
+                ch.shortcutCount(), g.compactGraph().edgeCount() / 2, ch.rounds()));
+    }
+
+    /**
+     * Total vertices settled by A* over the parameter set with the great-circle heuristic
+     * and with ALT landmark heuristics of increasing size, plus each one's build cost.
+     */
+    private static void compareLandmarkCounts(AugmentedStreetMapGraph g, double[][] queries,
+                                              int[] counts) {
+        long[][] endpoints = snap(g, queries);
+        CompactStreetMapGraph compact = g.compactGraph();
+        long baseline = 0;
+        for (long[] st : endpoints) {
+            baseline += new IntAStarSolver(compact, st[0], st[1], 20,
+                    SearchWorkspace.forCurrentThread(compact.size())).numStatesExplored();
+        }
+        System.out.println(String.format("great-circle: %d settled", baseline));
+        for (int count : counts) {
+            LandmarkHeuristic alt = new LandmarkHeuristic(compact, count);
+            long settled = 0;
+            for (long[] st : endpoints) {
+                settled += new IntAStarSolver(compact, st[0], st[1], 20,
+                        SearchWorkspace.forCurrentThread(compact.size()),
+                        IntAStarSolver.Fringe.DECREASE_KEY, alt).numStatesExplored();
+            }
+            System.out.println(String.format("%2d landmarks: %d settled (%.1f%% of great-circle), "
+                            + "built in %.2f s, %d KB", count, settled, 100.0 * settled / baseline,
+                    alt.buildSeconds(), alt.estimatedBytes() / 1024));
+        }
+    }
+
+    /**
+     * Per-query settled-state counts and average wall time of each Router algorithm,
+     * checked against the weight that the first algorithm finds.
+     */
+    private static void compareAlgorithms(AugmentedStreetMapGraph g, double[][] queries,
+                                          Router.Algorithm[] algorithms) {
+        long[][] endpoints = snap(g, queries);
+        double[] expected = new double[endpoints.length];
+        for (Router.Algorithm algorithm : algorithms) {
+            StringBuilder states = new StringBuilder();
+            int wrong = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                long[] st = endpoints[i];
+                ShortestPathsSolver<Long> solver = Router.solver(g, st[0], st[1], algorithm);
+                if (algorithm == algorithms[0]) {
+                    expected[i] = solver.solutionWeight();
+                } else if (Math.abs(expected[i] - solver.solutionWeight()) > 1e-9) {
+                    wrong++;
+                }
+                states.append(solver.numStatesExplored()).append(' ');
+            }
+            for (int r = 0; r < ROUNDS; r++) {
+                for (long[] st : endpoints) {
+                    Router.solver(g, st[0], st[1], algorithm);
+                }
+            }
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (long[] st : endpoints) {
+                    Router.solver(g, st[0], st[1], algorithm);
+                }
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / ROUNDS / endpoints.length;
+            System.out.println(String.format("%-12s %.3f ms/route, %d weight mismatches, settled: %s",
+                    algorithm, ms, wrong, states.toString().trim()));
+        }
+    }
+
+    /**
+     * Allocation and latency percentiles of IntAStarSolver with a fresh workspace per route
+     * versus the pooled, generation-stamped workspace that Router uses.
+     */
+    private static void compareWorkspaces(AugmentedStreetMapGraph g, double[][] queries) {
+        long[][] endpoints = snap(g, queries);
+        CompactStreetMapGraph compact = g.compactGraph();
+        int routes = 50 * ROUNDS * endpoints.length;
+        long[] fresh = new long[routes];
+        long[] pooled = new long[routes];
+
+        Runnable freshRun = () -> {
+            for (int i = 0; i < routes; i++) {
+                long[] st = endpoints[i % endpoints.length];
+                long start = System.nanoTime();
+                new IntAStarSolver(compact, st[0], st[1], 20);
+                fresh[i] = System.nanoTime() - start;
+            }
+        };
+        Runnable pooledRun = () -> {
+            for (int i = 0; i < routes; i++) {
+                long[] st = endpoints[i % endpoints.length];
+                long start = System.nanoTime();
+                new IntAStarSolver(compact, st[0], st[1], 20,
+                        SearchWorkspace.forCurrentThread(compact.size()));
+                pooled[i] = System.nanoTime() - start;
+            }
+        };
+        freshRun.run();
+        pooledRun.run();
+        long freshBytes = allocatedBytes(freshRun);
+        long pooledBytes = allocatedBytes(pooledRun);
+        System.out.println(String.format("fresh workspace:  %,d bytes/route, %s",
+                freshBytes / routes, percentiles(fresh)));
+        System.out.println(String.format("pooled workspace: %,d bytes/route, %s",
+                pooledBytes / routes, percentiles(pooled)));
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    /** Times AStarSolver on the map-based graph against IntAStarSolver on the CSR graph. */
+    private static void compareSolvers(AugmentedStreetMapGraph g, double[][] queries) {
+        long[][] endpoints = snap(g, queries);
+        CompactStreetMapGraph compact = g.compactGraph();
+        int mismatches = 0;
+        for (long[] st : endpoints) {
+            List<Long> expected = new AStarSolver<>(g, st[0], st[1], 20).solution();
+            List<Long> actual = new IntAStarSolver(compact, st[0], st[1], 20).solution();
+            if (!expected.equals(actual)) {
+                mismatches++;
+            }
+        }
+        solveAll(g, endpoints);
+        long start = System.nanoTime();
+        solveAll(g, endpoints);
+        long boxedNanos = System.nanoTime() - start;
+
+        for (int r = 0; r < ROUNDS; r++) {
+            for (long[] st : endpoints) {
+                new IntAStarSolver(compact, st[0], st[1], 20);
+            }
+        }
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (long[] st : endpoints) {
+                new IntAStarSolver(compact, st[0], st[1], 20);
+            }
+        }
+        long primitiveNanos = System.nanoTime() - start;
+
+        long routes = (long) ROUNDS * endpoints.length;
+        System.out.println(String.format("AStarSolver:    %.3f ms/route", boxedNanos / 1e6 / routes));
+        System.out.println(String.format("IntAStarSolver: %.3f ms/route (%.1fx, %d path mismatches)",
+                primitiveNanos / 1e6 / routes, (double) boxedNanos / primitiveNanos, mismatches));
+    }
+
+    /**
+     * Bytes allocated per route by AStarSolver when neighbors are visited in place versus
+     * when every expansion copies them into a list (the pre-visitor behaviour).
+     */
+    private static void compareNeighborAllocation(AugmentedStreetMapGraph g, double[][] queries) {
+        AStarGraph<Long> listOnly = new AStarGraph<Long>() {
+            @Override
+            public List<WeightedEdge<Long>> neighbors(Long v) {
+                return g.neighbors(v);
+            }
+
+            @Override
+            public double estimatedDistanceToGoal(Long s, Long goal) {
+                return g.estimatedDistanceToGoal(s, goal);
+            }
+        };
+        long[][] endpoints = snap(g, queries);
+        solveAll(listOnly, endpoints);
+        solveAll(g, endpoints);
+        long listBytes = allocatedBytes(() -> solveAll(listOnly, endpoints));
+        long visitorBytes = allocatedBytes(() -> solveAll(g, endpoints));
+        long routes = (long) ROUNDS * endpoints.length;
+        System.out.println(String.format("neighbors() list:  %,d bytes/route", listBytes / routes));
+        System.out.println(String.format("forEachNeighbor(): %,d bytes/route", visitorBytes / routes));
+    }
+
+    private static void solveAll(AStarGraph<Long> g, long[][] endpoints) {
+        for (int r = 0; r < ROUNDS; r++) {
+            for (long[] st : endpoints) {
+                new AStarSolver<>(g, st[0], st[1], 20);
+            }
+        }
+    }
+
+    private static long[][] snap(AugmentedStreetMapGraph g, double[][] queries) {
+        long[][] endpoints = new long[queries.length][];
+        for (int i = 0; i < queries.length; i++) {
+            double[] q = queries[i];
+            endpoints[i] = new long[]{g.closest(q[0], q[1]), g.closest(q[2], q[3])};
+        }
+        return endpoints;
+    }
+
+    /**
+     * Runs the same Dijkstra-like workload (insert, decrease-key, poll) through each
+     * PriorityQueue implementation and through the raw IndexedDoubleHeap at several arities.
+     */
+    private static void comparePriorityQueues() {
+        int n = 200000;
+        Random random = new Random(61);
+        double[] priorities = new double[n];
+        int[] decreased = new int[n];
+        for (int i = 0; i < n; i++) {
+            priorities[i] = random.nextDouble();
+            decreased[i] = random.nextInt(i + 1);
+        }
+
+        timePQ("MinHeapPQ", MinHeapPQ::new, priorities, decreased);
+        timePQ("DoubleMapPQ", DoubleMapPQ::new, priorities, decreased);
+        for (int arity : new int[]{2, 4, 8}) {
+            timePQ("ArrayHeapPQ(" + arity + ")", () -> new ArrayHeapPQ<>(arity),
+                    priorities, decreased);
+        }
+        for (int arity : new int[]{2, 4, 8}) {
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < 5; r++) {
+                IndexedDoubleHeap heap = new IndexedDoubleHeap(n, arity);
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    heap.insert(i, priorities[i]);
+                    int d = decreased[i];
+                    if (heap.contains(d)) {
+                        heap.changePriority(d, heap.priority(d) / 2);
+                    }
+                }
+                while (heap.size() > 0) {
+                    heap.poll();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(String.format("IndexedDoubleHeap(%d): %.1f ms", arity, best / 1e6));
+        }
+    }
+
+    private static void timePQ(String name, Supplier<PriorityQueue<Integer>> factory,
+                               double[] priorities, int[] decreased) {
+        int n = priorities.length;
+        double[] current = new double[n];
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < 5; r++) {
+            PriorityQueue<Integer> pq = factory.get();
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                pq.insert(i, priorities[i]);
+                current[i] = priorities[i];
+                int d = decreased[i];
+                if (pq.contains(d)) {
+                    current[d] /= 2;
+                    pq.changePriority(d, current[d]);
+                }
+            }
+            while (pq.size() > 0) {
+                pq.poll();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%s: %.1f ms", name, best / 1e6));
+    }
+
+    /** Returns the bytes allocated by the current thread while running TASK. */
+    static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(tid);
+        task.run();
+        return bean.getThreadAllocatedBytes(tid) - before;
+    }
+
+    /** Reads the TestRouter queries as {start_lon, start_lat, end_lon, end_lat} rows. */
+    static double[][] queriesFromFile(String paramsPath) throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(paramsPath), Charset.defaultCharset());
+        double[][] queries = new double[NUM_TESTS][4];
+        int lineIdx = 2; // ignore comment lines
+        for (int i = 0; i < NUM_TESTS; i++) {
+            for (int j = 0; j < 4; j++) {
+                queries[i][j] = Double.parseDouble(lines.get(lineIdx + j));
+            }
+            lineIdx += 4;
+        }
+        return queries;
+    }
+
+    /** Compares the retained heap of the map-based StreetMapGraph with its CSR copy. */
+    private static void compareGraphMemory(String dbPath) {
+        long before = usedHeap();
+        StreetMapGraph g = new StreetMapGraph(dbPath);
+        long mapBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CompactStreetMapGraph compact = new CompactStreetMapGraph(g);
+        long compactBytes = usedHeap() - before;
+
+        System.out.println(String.format("vertices: %d, directed edges: %d",
+                compact.size(), compact.edgeCount()));
+        System.out.println(String.format("StreetMapGraph:        %,d bytes", mapBytes));
+        System.out.println(String.format("CompactStreetMapGraph: %,d bytes (array estimate %,d)",
+                compactBytes, compact.estimatedBytes()));
+    }
+
+    /** Returns the heap in use after encouraging a full collection. */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,531 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.Constants;
+import bearmaps.utils.LruCache;
+import bearmaps.utils.TrieSet61BL;
+import bearmaps.utils.graph.CompactTrieSet;
+import bearmaps.utils.graph.MyTrieSet;
+import bearmaps.utils.graph.TokenIndex;
+import bearmaps.utils.graph.streetmap.NameTable;
+import bearmaps.utils.graph.streetmap.Node;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Memory and latency of the location-name search structures. Not a JUnit test; run main,
+ * optionally with the OSM file as args[0].
+ */
+public class SearchBenchmark {
+    private static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int ROUNDS = 20;
+
+    /* Keeps structures reachable while their retained heap is measured. */
+    private static Object retained;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        timeStartup(dbPath);
+        List<String> names = cleanedNames(dbPath);
+        compareTries(names);
+        compareTopK(names, 1, 10);
+        compareTopK(names, 2, 10);
+        compareFuzzy(names, 6, 1, 10);
+        compareFuzzy(names, 8, 2, 10);
+        compareWords(names);
+        compareResponseCache(dbPath, names);
+    }
+
+    /**
+     * Replays a skewed autocomplete session, in which users mostly type the first one to
+     * three letters of popular names, against /search's work without and with an LruCache
+     * of serialized responses, for complete and top-10 answers. Reports the hit rate, the
+     * cache's footprint and the time per request including Gson.
+     */
+    private static void compareResponseCache(String dbPath, List<String> names) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        Map<String, Integer> counts = new HashMap<>();
+        for (String name : names) {
+            counts.merge(name, 1, Integer::sum);
+        }
+        List<String> popular = new ArrayList<>(counts.keySet());
+        popular.sort((a, b) -> counts.get(b) - counts.get(a));
+
+        // name ranks drawn with probability falling as 1 / rank, typed 1 to 3 letters deep
+        Random random = new Random(24);
+        double harmonic = Math.log(popular.size()) + 0.5772;
+        List<String> session = new ArrayList<>();
+        while (session.size() < 20000) {
+            int rank = (int) Math.min(Math.exp(random.nextDouble() * harmonic) - 1,
+                    popular.size() - 1);
+            String name = popular.get(rank);
+            for (int length = 1; length <= Math.min(3, name.length()); length++) {
+                session.add(name.substring(0, length));
+            }
+        }
+
+        Gson gson = new Gson();
+        for (int limit : new int[]{0, 10}) {
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (String prefix : session) {
+                bytes += gson.toJson(graph.getLocationsByPrefix(prefix, limit)).length();
+            }
+            double plainUs = (System.nanoTime() - start) / 1e3 / session.size();
+
+            LruCache<String, String> cache = new LruCache<>(Constants.SEARCH_CACHE_ENTRIES,
+                    Constants.SEARCH_CACHE_BYTES, json -> 2L * json.length() + 56);
+            start = System.nanoTime();
+            for (String prefix : session) {
+                String key = "p:" + limit + ":0:" + NameTable.clean(prefix);
+                String json = cache.get(key);
+                if (json == null) {
+                    json = gson.toJson(graph.getLocationsByPrefix(prefix, limit));
+                    cache.put(key, json);
+                }
+                bytes -= json.length();
+            }
+            double cachedUs = (System.nanoTime() - start) / 1e3 / session.size();
+            System.out.println(String.format("%d autocomplete requests, limit %d: uncached "
+                            + "%.1f us, cached %.1f us, hit rate %.3f, %d entries, %,d bytes "
+                            + "(%d mismatched bytes)", session.size(), limit, plainUs, cachedUs,
+                    cache.hitRate(), cache.size(), cache.bytes(), bytes));
+        }
+    }
+
+    /**
+     * Build time and size of the TokenIndex over every named node, then the latency of
+     * finding the nodes whose name has all of two or three words, taken in reverse order
+     * from random multi-word names, against scanning every name. The index results are
+     * checked against the scan.
+     */
+    private static void compareWords(List<String> names) {
+        long start = System.nanoTime();
+        TokenIndex index = new TokenIndex(names);
+        double buildMs = (System.nanoTime() - start) / 1e6;
+        long postings = 0;
+        List<Set<String>> tokens = new ArrayList<>();
+        for (String name : names) {
+            Set<String> words = new HashSet<>(Arrays.asList(name.split(" ")));
+            words.remove("");
+            tokens.add(words);
+            postings += words.size();
+        }
+        System.out.println(String.format("TokenIndex over %d names, %d words: built in %.1f ms, "
+                        + "%,d bytes (%,d as plain int lists)", index.size(), index.termCount(),
+                buildMs, index.estimatedBytes(), 4 * postings + 8L * index.termCount()));
+
+        Random random = new Random(22);
+        for (int words = 2; words <= 3; words++) {
+            List<String> queries = new ArrayList<>();
+            while (queries.size() < 1000) {
+                List<String> parts = new ArrayList<>(tokens.get(random.nextInt(names.size())));
+                if (parts.size() >= words) {
+                    Collections.shuffle(parts, random);
+                    queries.add(String.join(" ", parts.subList(0, words)));
+                }
+            }
+
+            int wrong = 0;
+            for (String query : queries) {
+                if (!Arrays.equals(index.search(query, 0), scan(tokens, query))) {
+                    wrong++;
+                }
+            }
+            long results = 0;
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (String query : queries) {
+                    results += index.search(query, 0).length;
+                }
+            }
+            double indexUs = (System.nanoTime() - start) / 1e3 / ROUNDS / queries.size();
+            start = System.nanoTime();
+            for (String query : queries) {
+                results += scan(tokens, query).length;
+            }
+            double scanUs = (System.nanoTime() - start) / 1e3 / queries.size();
+            System.out.println(String.format("%d queries of %d words: index %.1f us, scan %.1f "
+                            + "us, %d wrong (checksum %d)", queries.size(), words, indexUs,
+                    scanUs, wrong, results));
+        }
+    }
+
+    /* Returns the positions of the token sets containing every word of QUERY. */
+    private static int[] scan(List<Set<String>> tokens, String query) {
+        List<String> words = Arrays.asList(query.split(" "));
+        return IntStream.range(0, tokens.size())
+                .filter(d -> tokens.get(d).containsAll(words)).toArray();
+    }
+
+    /**
+     * Latency of exact top-K prefix search versus fuzzyKeysWithPrefix with up to EDITS
+     * typos, on prefixes of LENGTH characters of random names with EDITS random typos
+     * each. Reports how often the exact search finds nothing and how often the fuzzy one
+     * recovers the original name, and checks the unlimited fuzzy results and distances on
+     * a sample against comparing the query with every prefix of every name.
+     */
+    private static void compareFuzzy(List<String> names, int length, int edits, int k) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String name : names) {
+            counts.merge(name, 1, Integer::sum);
+        }
+        CompactTrieSet trie = new CompactTrieSet();
+        counts.forEach(trie::add);
+        List<String> distinct = new ArrayList<>(new TreeSet<>(counts.keySet()));
+        distinct.removeIf(name -> name.length() < length);
+
+        Random random = new Random(21);
+        List<String> queries = new ArrayList<>();
+        List<String> originals = new ArrayList<>();
+        for (int i = 0; i < 1000 && !distinct.isEmpty(); i++) {
+            String name = distinct.get(random.nextInt(distinct.size()));
+            StringBuilder typo = new StringBuilder(name.substring(0, length));
+            for (int e = 0; e < edits; e++) {
+                int at = random.nextInt(typo.length());
+                char c = (char) ('a' + random.nextInt(26));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        typo.insert(at, c);
+                        break;
+                    case 1:
+                        typo.deleteCharAt(at);
+                        break;
+                    default:
+                        typo.setCharAt(at, c);
+                }
+            }
+            queries.add(typo.toString());
+            originals.add(name);
+        }
+
+        int wrong = 0;
+        for (int i = 0; i < Math.min(100, queries.size()); i++) {
+            String query = queries.get(i);
+            Map<String, Integer> expected = new HashMap<>();
+            for (String name : counts.keySet()) {
+                int d = prefixDistance(query, name);
+                if (d <= edits) {
+                    expected.put(name, d);
+                }
+            }
+            List<String> got = trie.fuzzyKeysWithPrefix(query, edits, 0);
+            boolean ok = got.size() == expected.size();
+            for (int j = 0; ok && j < got.size(); j++) {
+                Integer d = expected.get(got.get(j));
+                ok = d != null && (j == 0 || d >= expected.get(got.get(j - 1)));
+            }
+            if (!ok) {
+                wrong++;
+            }
+        }
+
+        int exactEmpty = 0;
+        int recovered = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            if (trie.topKeysWithPrefix(queries.get(i), k).isEmpty()) {
+                exactEmpty++;
+            }
+            if (trie.fuzzyKeysWithPrefix(queries.get(i), edits, 0).contains(originals.get(i))) {
+                recovered++;
+            }
+        }
+
+        long results = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String query : queries) {
+                results += trie.topKeysWithPrefix(query, k).size();
+            }
+        }
+        double exactUs = (System.nanoTime() - start) / 1e3 / ROUNDS / queries.size();
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String query : queries) {
+                results += trie.fuzzyKeysWithPrefix(query, edits, k).size();
+            }
+        }
+        double fuzzyUs = (System.nanoTime() - start) / 1e3 / ROUNDS / queries.size();
+        System.out.println(String.format("%d prefixes of length %d with %d typos: exact top %d "
+                        + "%.1f us, %d found nothing; fuzzy top %d %.1f us, %d recovered the "
+                        + "name; %d wrong of 100 checked (checksum %d)", queries.size(), length,
+                edits, k, exactUs, exactEmpty, k, fuzzyUs, recovered, wrong, results));
+    }
+
+    /* Returns the smallest edit distance between QUERY and any prefix of NAME. */
+    private static int prefixDistance(String query, String name) {
+        int[] prev = new int[query.length() + 1];
+        int[] row = new int[query.length() + 1];
+        for (int i = 0; i <= query.length(); i++) {
+            prev[i] = i;
+        }
+        int best = prev[query.length()];
+        for (int j = 0; j < name.length(); j++) {
+            row[0] = j + 1;
+            for (int i = 1; i <= query.length(); i++) {
+                int cost = query.charAt(i - 1) == name.charAt(j) ? 0 : 1;
+                row[i] = Math.min(Math.min(prev[i], row[i - 1]) + 1, prev[i - 1] + cost);
+            }
+            best = Math.min(best, row[query.length()]);
+            int[] swap = prev;
+            prev = row;
+            row = swap;
+        }
+        return best;
+    }
+
+    /**
+     * Startup cost of the name handling in AugmentedStreetMapGraph: cleaning every node
+     * name with the old regex replaceAll versus NameTable.clean, checked to agree; the old
+     * map from cleaned name to node list, which cleaned duplicates twice, versus a
+     * NameTable; and the whole constructor, best of three.
+     */
+    private static void timeStartup(String dbPath) {
+        List<Node> nodes = new NodeListing(dbPath).nodes();
+        long mapBytes = retainedBytes(() -> cleanToDirty(nodes));
+        long tableBytes = retainedBytes(() -> new NameTable(nodes));
+        List<String> raw = new ArrayList<>();
+        for (Node n : nodes) {
+            if (n.name() != null) {
+                raw.add(n.name());
+            }
+        }
+
+        int wrong = 0;
+        for (String name : raw) {
+            if (!NameTable.clean(name).equals(name.replaceAll("[^a-zA-Z ]", "").toLowerCase())) {
+                wrong++;
+            }
+        }
+        long chars = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String name : raw) {
+                chars += name.replaceAll("[^a-zA-Z ]", "").toLowerCase().length();
+            }
+        }
+        double regexNs = (System.nanoTime() - start) / (double) ROUNDS / raw.size();
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String name : raw) {
+                chars += NameTable.clean(name).length();
+            }
+        }
+        double scanNs = (System.nanoTime() - start) / (double) ROUNDS / raw.size();
+        System.out.println(String.format("cleaning %d names: regex %.0f ns, scan %.0f ns each, "
+                + "%d differ (checksum %d)", raw.size(), regexNs, scanNs, wrong, chars));
+
+
+        double mapMs = Double.POSITIVE_INFINITY;
+        double tableMs = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < 3; r++) {
+            start = System.nanoTime();
+            chars += cleanToDirty(nodes).size();
+            mapMs = Math.min(mapMs, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            chars += new NameTable(nodes).nameCount();
+            tableMs = Math.min(tableMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println(String.format("cleaned-name map %.1f ms, retained %,d bytes; "
+                + "NameTable %.1f ms, retained %,d bytes", mapMs, mapBytes, tableMs, tableBytes));
+
+        double graphMs = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < 3; r++) {
+            start = System.nanoTime();
+            new AugmentedStreetMapGraph(dbPath);
+            graphMs = Math.min(graphMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println(String.format("AugmentedStreetMapGraph constructor %.0f ms "
+                + "(checksum %d)", graphMs, chars));
+    }
+
+    /* Returns about how much heap each result of BUILD keeps, measured over ten copies as
+       what is freed once they are dropped: a baseline taken beforehand is off by the
+       megabyte or two the parser's leftovers keep releasing. */
+    private static long retainedBytes(Supplier<Object> build) {
+        // only the static field may reference them, or dropping it would free nothing
+        retained = new Object[10];
+        for (int i = 0; i < 10; i++) {
+            ((Object[]) retained)[i] = build.get();
+        }
+        long with = RoutingBenchmark.usedHeap();
+        retained = null;
+        return (with - RoutingBenchmark.usedHeap()) / 10;
+    }
+
+    /* The map from cleaned name to nodes that AugmentedStreetMapGraph used to build, with
+       the regex cleaning done twice for repeated names. */
+    private static Map<String, List<Node>> cleanToDirty(List<Node> nodes) {
+        Map<String, List<Node>> cleanToDirty = new HashMap<>();
+        for (Node n : nodes) {
+            if (n.name() != null) {
+                String cleaned = n.name().replaceAll("[^a-zA-Z ]", "").toLowerCase();
+                if (!cleanToDirty.containsKey(cleaned)) {
+                    cleanToDirty.put(cleaned, new ArrayList<>(Collections.singletonList(n)));
+                } else {
+                    cleanToDirty.get(n.name().replaceAll("[^a-zA-Z ]", "").toLowerCase()).add(n);
+                }
+            }
+        }
+        return cleanToDirty;
+    }
+
+    /**
+     * Time and JSON response size of keysWithPrefix, which returns every completion, versus
+     * topKeysWithPrefix for the K best by score, where a name's score is how many nodes
+     * carry it, over every prefix of LENGTH characters. Checks the top K against sorting
+     * every completion by score.
+     */
+    private static void compareTopK(List<String> names, int length, int k) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String name : names) {
+            counts.merge(name, 1, Integer::sum);
+        }
+        CompactTrieSet trie = new CompactTrieSet();
+        counts.forEach(trie::add);
+        List<String> prefixes = new ArrayList<>(prefixes(counts.keySet(), length));
+        Gson gson = new Gson();
+
+        int wrong = 0;
+        long allBytes = 0;
+        long topBytes = 0;
+        for (String prefix : prefixes) {
+            List<String> all = trie.keysWithPrefix(prefix);
+            List<String> top = trie.topKeysWithPrefix(prefix, k);
+            all.sort((a, b) -> counts.get(b) - counts.get(a));
+            for (int i = 0; i < Math.min(k, all.size()); i++) {
+                if (i >= top.size() || !counts.get(all.get(i)).equals(counts.get(top.get(i)))) {
+                    wrong++;
+                    break;
+                }
+            }
+            allBytes += gson.toJson(all).length();
+            topBytes += gson.toJson(top).length();
+        }
+
+        long results = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String prefix : prefixes) {
+                results += trie.keysWithPrefix(prefix).size();
+            }
+        }
+        double allUs = (System.nanoTime() - start) / 1e3 / ROUNDS / prefixes.size();
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String prefix : prefixes) {
+                results += trie.topKeysWithPrefix(prefix, k).size();
+            }
+        }
+        double topUs = (System.nanoTime() - start) / 1e3 / ROUNDS / prefixes.size();
+        System.out.println(String.format("%d prefixes of length %d: every completion %.1f us, "
+                        + "%d JSON bytes; top %d %.1f us, %d JSON bytes; %d wrong rankings "
+                        + "(checksum %d)", prefixes.size(), length, allUs,
+                allBytes / prefixes.size(), k,
+                topUs, topBytes / prefixes.size(), wrong, results));
+    }
+
+    /* Returns every distinct prefix of exactly LENGTH characters of NAMES. */
+    private static TreeSet<String> prefixes(Collection<String> names, int length) {
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String name : names) {
+            if (name.length() >= length) {
+                prefixes.add(name.substring(0, length));
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Retained heap of MyTrieSet versus CompactTrieSet over every cleaned name, and the
+     * time for keysWithPrefix over every distinct 1-, 2- and 3-character prefix of a name,
+     * checked against filtering the sorted names.
+     */
+    private static void compareTries(List<String> names) {
+        TreeSet<String> sorted = new TreeSet<>(names);
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String name : sorted) {
+            for (int length = 1; length <= 3 && length <= name.length(); length++) {
+                prefixes.add(name.substring(0, length));
+            }
+        }
+        System.out.println(String.format("%d names, %d distinct, %d prefixes", names.size(),
+                sorted.size(), prefixes.size()));
+
+        reportTrie("MyTrieSet", new MyTrieSet(), names, sorted, prefixes);
+        reportTrie("CompactTrieSet", new CompactTrieSet(), names, sorted, prefixes);
+    }
+
+    /* Fills the empty TRIE with NAMES, then reports its retained heap, correctness and
+       keysWithPrefix latency over PREFIXES. */
+    private static void reportTrie(String label, TrieSet61BL trie, List<String> names,
+                                   TreeSet<String> sorted, TreeSet<String> prefixes) {
+        long before = RoutingBenchmark.usedHeap();
+        for (String name : names) {
+            trie.add(name);
+        }
+        if (trie instanceof CompactTrieSet) {
+            ((CompactTrieSet) trie).trimToSize();
+        }
+        long bytes = RoutingBenchmark.usedHeap() - before;
+
+        int wrong = 0;
+        for (String prefix : prefixes) {
+            List<String> got = new ArrayList<>(trie.keysWithPrefix(prefix));
+            Collections.sort(got);
+            List<String> expected = new ArrayList<>(
+                    sorted.subSet(prefix, prefix + Character.MAX_VALUE));
+            if (!got.equals(expected)) {
+                wrong++;
+            }
+        }
+        long results = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String prefix : prefixes) {
+                results += trie.keysWithPrefix(prefix).size();
+            }
+        }
+        double us = (System.nanoTime() - start) / 1e3 / ROUNDS / prefixes.size();
+        System.out.println(String.format("%-14s retained %,d bytes, keysWithPrefix %.1f us "
+                        + "(%d results), wrong for %d prefixes", label, bytes, us,
+                results / ROUNDS, wrong));
+    }
+
+    /** Returns the cleaned name of every named node, as AugmentedStreetMapGraph adds them. */
+    private static List<String> cleanedNames(String dbPath) {
+        List<String> names = new ArrayList<>();
+        for (Node n : new NodeListing(dbPath).nodes()) {
+            if (n.name() != null) {
+                names.add(NameTable.clean(n.name()));
+            }
+        }
+        return names;
+    }
+
+    /* Exposes the parsed nodes of a map, named or not. */
+    private static class NodeListing extends StreetMapGraph {
+        NodeListing(String dbPath) {
+            super(dbPath);
+        }
+
+        List<Node> nodes() {
+            return getNodes();
+        }
+    }
+}
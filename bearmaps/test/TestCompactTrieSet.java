@@ -0,0 +1,176 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.utils.graph.CompactTrieSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks CompactTrieSet's ranked completions on a handful of names, and against sorting
+ * every matching key on random ones.
+ */
+public class TestCompactTrieSet {
+
+    /* A few place names, each scored by how many locations carry it. */
+    private static CompactTrieSet places() {
+        CompactTrieSet trie = new CompactTrieSet();
+        trie.add("pizza", 5);
+        trie.add("pizza hut", 9);
+        trie.add("pizzeria", 2);
+        trie.add("pie", 7);
+        trie.add("pho", 1);
+        trie.add("peets", 4);
+        return trie;
+    }
+
+    /* Returns N random keys over a small alphabet, so they share many prefixes, each mapped
+       to a distinct random score. */
+    private static Map<String, Integer> randomKeys(Random random, int n) {
+        List<Integer> scores = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            scores.add(i);
+        }
+        Collections.shuffle(scores, random);
+        Map<String, Integer> keys = new HashMap<>();
+        while (keys.size() < n) {
+            keys.putIfAbsent(randomWord(random, 1 + random.nextInt(7)), scores.get(keys.size()));
+        }
+        return keys;
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append("abcd ".charAt(random.nextInt(5)));
+        }
+        return word.toString();
+    }
+
+    @Test
+    public void testScore() {
+        CompactTrieSet trie = places();
+        assertEquals(5, trie.score("pizza"));
+        trie.add("pizza", 3);
+        assertEquals(5, trie.score("pizza"));
+        trie.add("pizza", 6);
+        assertEquals(6, trie.score("pizza"));
+        trie.add("pizzas");
+        assertEquals(0, trie.score("pizzas"));
+        assertEquals(-1, trie.score("piz"));
+    }
+
+    @Test
+    public void testTopKeysWithPrefix() {
+        CompactTrieSet trie = places();
+        assertEquals(Arrays.asList("pizza hut", "pie", "pizza"), trie.topKeysWithPrefix("pi", 3));
+        assertEquals(Arrays.asList("pizza hut", "pizza"), trie.topKeysWithPrefix("pizza", 10));
+        assertEquals(Arrays.asList("pizza hut"), trie.topKeysWithPrefix("", 1));
+        assertEquals(Collections.emptyList(), trie.topKeysWithPrefix("pizzaz", 3));
+        assertEquals(Collections.emptyList(), trie.topKeysWithPrefix("pi", 0));
+    }
+
+    @Test
+    public void testTopKeysMatchSort() {
+        Random random = new Random(20);
+        Map<String, Integer> keys = randomKeys(random, 3000);
+        CompactTrieSet trie = new CompactTrieSet();
+        for (Map.Entry<String, Integer> e : keys.entrySet()) {
+            trie.add(e.getKey(), e.getValue());
+        }
+        trie.trimToSize();
+
+        for (int i = 0; i < 200; i++) {
+            String prefix = randomWord(random, random.nextInt(4));
+            int k = 1 + random.nextInt(12);
+            List<String> expected = new ArrayList<>();
+            for (String key : keys.keySet()) {
+                if (key.startsWith(prefix)) {
+                    expected.add(key);
+                }
+            }
+            expected.sort((a, b) -> keys.get(b) - keys.get(a));
+            expected = expected.subList(0, Math.min(k, expected.size()));
+            assertEquals("Top " + k + " for \"" + prefix + "\" are incorrect.", expected,
+                    trie.topKeysWithPrefix(prefix, k));
+        }
+    }
+
+    @Test
+    public void testFuzzyKeysWithPrefix() {
+        CompactTrieSet trie = places();
+        // "piza" is one edit from "pizz" and "pizza", two from "pie"
+        assertEquals(Arrays.asList("pizza hut", "pizza", "pizzeria"),
+                trie.fuzzyKeysWithPrefix("piza", 1, 0));
+        assertEquals(Arrays.asList("pizza hut", "pizza", "pizzeria", "pie"),
+                trie.fuzzyKeysWithPrefix("piza", 2, 0));
+        assertEquals(Arrays.asList("pizza hut", "pizza"), trie.fuzzyKeysWithPrefix("piza", 1, 2));
+        // exact completions come first, whatever their score
+        assertEquals(Arrays.asList("pie", "pizza hut", "pizza", "peets", "pizzeria"),
+                trie.fuzzyKeysWithPrefix("pie", 1, 0));
+        assertEquals(trie.topKeysWithPrefix("piz", 10), trie.fuzzyKeysWithPrefix("piz", 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFuzzyNegativeEdits() {
+        places().fuzzyKeysWithPrefix("pi", -1, 0);
+    }
+
+    @Test
+    public void testFuzzyKeysMatchSort() {
+        Random random = new Random(21);
+        Map<String, Integer> keys = randomKeys(random, 2000);
+        CompactTrieSet trie = new CompactTrieSet();
+        for (Map.Entry<String, Integer> e : keys.entrySet()) {
+            trie.add(e.getKey(), e.getValue());
+        }
+
+        for (int i = 0; i < 200; i++) {
+            String prefix = randomWord(random, 1 + random.nextInt(5));
+            int maxEdits = random.nextInt(3);
+            int limit = random.nextInt(15);
+            Map<String, Integer> distances = new HashMap<>();
+            for (String key : keys.keySet()) {
+                int d = prefixDistance(prefix, key);
+                if (d <= maxEdits) {
+                    distances.put(key, d);
+                }
+            }
+            List<String> expected = new ArrayList<>(distances.keySet());
+            expected.sort((a, b) -> distances.get(a).equals(distances.get(b))
+                    ? keys.get(b) - keys.get(a) : distances.get(a) - distances.get(b));
+            if (limit > 0) {
+                expected = expected.subList(0, Math.min(limit, expected.size()));
+            }
+            assertEquals("Matches within " + maxEdits + " of \"" + prefix + "\" are incorrect.",
+                    expected, trie.fuzzyKeysWithPrefix(prefix, maxEdits, limit));
+        }
+    }
+
+    /* Returns the fewest edits that turn PREFIX into some prefix of KEY. */
+    private static int prefixDistance(String prefix, String key) {
+        int[] row = new int[prefix.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        int best = row[prefix.length()];
+        for (int j = 1; j <= key.length(); j++) {
+            int[] next = new int[row.length];
+            next[0] = j;
+            for (int i = 1; i < row.length; i++) {
+                int replace = row[i - 1] + (prefix.charAt(i - 1) == key.charAt(j - 1) ? 0 : 1);
+                next[i] = Math.min(replace, Math.min(row[i], next[i - 1]) + 1);
+            }
+            row = next;
+            best = Math.min(best, row[prefix.length()]);
+        }
+        return best;
+    }
+}
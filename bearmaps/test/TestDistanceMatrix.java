@@ -0,0 +1,72 @@
+package bearmaps.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import bearmaps.Router;
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.ShortestPathsSolver;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks every entry of a distance matrix on the tiny graph against a single A* route.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH_TINY = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    /* Miles; the compact graph stores edge weights as floats. */
+    private static final double DELTA = 1e-4;
+    private static AugmentedStreetMapGraph graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        // nodes 22, 41 and 66 to nodes 66, 11, 55 and 66 again
+        double[] srclons = {0.2, 0.4, 0.6};
+        double[] srclats = {38.2, 38.1, 38.6};
+        double[] destlons = {0.6, 0.1, 0.5, 0.6};
+        double[] destlats = {38.6, 38.1, 38.5, 38.6};
+        DistanceMatrix matrix = Router.distanceMatrix(graphTiny, srclons, srclats,
+                destlons, destlats, true);
+
+        assertEquals(3, matrix.numSources());
+        assertEquals(4, matrix.numTargets());
+        for (int i = 0; i < matrix.numSources(); i++) {
+            assertEquals(graphTiny.closest(srclons[i], srclats[i]), matrix.source(i));
+            for (int j = 0; j < matrix.numTargets(); j++) {
+                assertEquals(graphTiny.closest(destlons[j], destlats[j]), matrix.target(j));
+                ShortestPathsSolver<Long> expected = Router.solver(graphTiny,
+                        matrix.source(i), matrix.target(j), Router.Algorithm.ASTAR);
+                assertEquals("Distance from " + matrix.source(i) + " to " + matrix.target(j)
+                        + " is incorrect.", expected.solutionWeight(), matrix.distance(i, j),
+                        DELTA);
+                assertEquals(expected.solution(), matrix.path(i, j));
+            }
+        }
+        assertEquals(0, matrix.distance(2, 0), DELTA);
+    }
+
+    @Test
+    public void testWithoutPaths() {
+        DistanceMatrix matrix = Router.distanceMatrix(graphTiny, new double[]{0.2},
+                new double[]{38.2}, new double[]{0.4}, new double[]{38.1}, false);
+        double expected = Router.solver(graphTiny, 22, 41, Router.Algorithm.ASTAR)
+                .solutionWeight();
+        assertEquals(expected, matrix.distance(0, 0), DELTA);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPathsNotKept() {
+        Router.distanceMatrix(graphTiny, new double[]{0.2}, new double[]{38.2},
+                new double[]{0.4}, new double[]{38.1}, false).path(0, 0);
+    }
+}
@@ -0,0 +1,135 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.ps.KDTree;
+import bearmaps.utils.ps.Point;
+import bearmaps.utils.ps.PointSetType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks KDTree's nearest() against a scan of the live points as points are inserted and
+ * deleted, and the closest() candidates of a graph built with a dynamic KDTree.
+ */
+public class TestKDTree {
+    private static final String OSM_DB_PATH_TINY = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final int QUERIES = 200;
+
+    /* Returns a random point in a patch of Berkeley about a mile and a half across. */
+    private static Point randomPoint(Random random) {
+        return new Point(-122.28 + random.nextDouble() * 0.03,
+                37.86 + random.nextDouble() * 0.02);
+    }
+
+    /* Asserts that TREE's nearest() is as close as the closest of LIVE for random queries. */
+    private static void assertNearestMatchesScan(KDTree tree, List<Point> live, Random random) {
+        assertEquals(live.size(), tree.size());
+        for (int i = 0; i < QUERIES; i++) {
+            Point goal = randomPoint(random);
+            double best = Double.POSITIVE_INFINITY;
+            for (Point p : live) {
+                best = Math.min(best, Point.distance(p, goal));
+            }
+            assertEquals(best, Point.distance(tree.nearest(goal.getX(), goal.getY()), goal),
+                    1e-12);
+        }
+    }
+
+    @Test
+    public void testInsert() {
+        Random random = new Random(18);
+        List<Point> live = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            live.add(randomPoint(random));
+        }
+        KDTree tree = new KDTree(live);
+        for (int i = 0; i < 2000; i++) {
+            Point p = randomPoint(random);
+            tree.insert(p);
+            live.add(p);
+        }
+        assertNearestMatchesScan(tree, live, random);
+        // scapegoat rebuilds keep the depth within a small factor of the balanced bound
+        assertTrue(tree.depth() <= 3 * (32 - Integer.numberOfLeadingZeros(live.size())));
+    }
+
+    @Test
+    public void testDelete() {
+        Random random = new Random(81);
+        List<Point> live = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            live.add(randomPoint(random));
+        }
+        KDTree tree = new KDTree(live);
+        for (int i = 0; i < 1500; i++) {
+            Point p = live.remove(random.nextInt(live.size()));
+            assertTrue(tree.delete(new Point(p.getX(), p.getY())));
+            if (i % 500 == 0) {
+                assertNearestMatchesScan(tree, live, random);
+            }
+        }
+        assertNearestMatchesScan(tree, live, random);
+        assertFalse(tree.delete(new Point(0, 0)));
+    }
+
+    @Test
+    public void testDeleteEverything() {
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(-122.26, 37.87));
+        points.add(new Point(-122.25, 37.86));
+        KDTree tree = new KDTree(points);
+        assertTrue(tree.delete(new Point(-122.26, 37.87)));
+        assertTrue(tree.delete(new Point(-122.25, 37.86)));
+        assertFalse(tree.delete(new Point(-122.25, 37.86)));
+        assertEquals(0, tree.size());
+        assertNull(tree.nearest(-122.26, 37.87));
+
+        tree.insert(new Point(-122.24, 37.85));
+        assertEquals(new Point(-122.24, 37.85), tree.nearest(-122.26, 37.87));
+    }
+
+    @Test
+    public void testClosestCandidates() {
+        AugmentedStreetMapGraph graph =
+                new AugmentedStreetMapGraph(OSM_DB_PATH_TINY, PointSetType.DYNAMIC_KD_TREE);
+        assertEquals(22, graph.closest(0.2, 38.2));
+
+        assertTrue(graph.removeClosestCandidate(22));
+        assertFalse(graph.removeClosestCandidate(22));
+        assertEquals(11, graph.closest(0.2, 38.2));
+
+        // moving 22 next to 55 makes it the closest there instead
+        graph.addClosestCandidate(22, 0.5, 38.45);
+        assertEquals(22, graph.closest(0.5, 38.45));
+        assertEquals(11, graph.closest(0.2, 38.2));
+        graph.addClosestCandidate(22, 0.2, 38.2);
+        assertEquals(22, graph.closest(0.2, 38.2));
+        assertEquals(55, graph.closest(0.5, 38.45));
+    }
+
+    @Test
+    public void testLastClosestCandidateStays() {
+        AugmentedStreetMapGraph graph =
+                new AugmentedStreetMapGraph(OSM_DB_PATH_TINY, PointSetType.DYNAMIC_KD_TREE);
+        long[] ids = {11, 22, 41, 46, 55, 63};
+        for (long id : ids) {
+            assertTrue(graph.removeClosestCandidate(id));
+        }
+        assertEquals(66, graph.closest(0.1, 38.1));
+        try {
+            graph.removeClosestCandidate(66);
+            fail("Removed the last closest() candidate.");
+        } catch (IllegalStateException e) {
+            assertEquals(66, graph.closest(0.1, 38.1));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.utils.LruCache;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks which entries LruCache evicts under its entry and byte bounds, and its counters.
+ */
+public class TestLruCache {
+
+    /* A cache of strings weighing one byte a character. */
+    private static LruCache<String, String> cache(int maxEntries, long maxBytes) {
+        return new LruCache<>(maxEntries, maxBytes, String::length);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntry() {
+        LruCache<String, String> cache = cache(2, 100);
+        cache.put("a", "apple");
+        cache.put("b", "banana");
+        assertEquals("apple", cache.get("a"));
+        // b is now the least recently used
+        cache.put("c", "cherry");
+        assertNull(cache.get("b"));
+        assertEquals("apple", cache.get("a"));
+        assertEquals("cherry", cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(11, cache.bytes());
+    }
+
+    @Test
+    public void testEvictsDownToByteBound() {
+        LruCache<String, String> cache = cache(100, 10);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        cache.put("c", "12");
+        assertEquals(10, cache.bytes());
+        cache.put("d", "12345");
+        // a and b had to go to fit d's 5 bytes
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("12", cache.get("c"));
+        assertEquals(7, cache.bytes());
+        assertEquals(2, cache.evictions());
+
+        // too heavy for the whole budget: not stored, and nothing else is evicted
+        cache.put("e", "12345678901");
+        assertNull(cache.get("e"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void testReplaceReweighs() {
+        LruCache<String, String> cache = cache(10, 10);
+        cache.put("a", "12345");
+        cache.put("a", "12");
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.bytes());
+        // a replacement too heavy to store drops the old value too
+        cache.put("a", "12345678901");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void testZeroEntriesStoresNothing() {
+        LruCache<String, String> cache = cache(0, 100);
+        cache.put("a", "apple");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCounters() {
+        LruCache<String, String> cache = cache(10, 100);
+        assertEquals(0, cache.hitRate(), 0);
+        cache.get("a");
+        cache.put("a", "apple");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(0.5, cache.hitRate(), 1e-12);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.misses());
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(0, stats.get("entries"));
+        assertEquals(10, stats.get("max_entries"));
+        assertEquals(100L, stats.get("max_bytes"));
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(3L, stats.get("misses"));
+        assertEquals(0L, stats.get("evictions"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBound() {
+        cache(-1, 100);
+    }
+}
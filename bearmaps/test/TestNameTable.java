@@ -0,0 +1,85 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.utils.graph.streetmap.NameTable;
+import bearmaps.utils.graph.streetmap.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks NameTable.clean against the regex it replaced, and the table's grouping of nodes
+ * by cleaned name.
+ */
+public class TestNameTable {
+
+    /* The cleaning AugmentedStreetMapGraph used to do. */
+    private static String regexClean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testClean() {
+        assertEquals("peets coffee  tea", NameTable.clean("Peet's Coffee & Tea"));
+        // like the regex, only ASCII letters are kept
+        assertEquals("caf", NameTable.clean("Caf\u00e9"));
+        assertEquals("th st", NameTable.clean("4th St."));
+        assertEquals("  ", NameTable.clean("123 - 456"));
+        assertEquals("", NameTable.clean(""));
+        String clean = "already clean";
+        assertTrue(clean == NameTable.clean(clean));
+    }
+
+    @Test
+    public void testCleanMatchesRegex() {
+        Random random = new Random(23);
+        String alphabet = "aZbY zQ09_-'&.,\u00e9\u00c9\u0130\u0131\u00df\u00a0\t";
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder s = new StringBuilder();
+            for (int k = random.nextInt(20); k > 0; k--) {
+                s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertEquals(regexClean(s.toString()), NameTable.clean(s.toString()));
+        }
+    }
+
+    @Test
+    public void testTable() {
+        List<Node> nodes = new ArrayList<>();
+        String[] names = {"Pizza Hut", null, "Peet's", "pizza hut", "Peets", "Yali's"};
+        for (int i = 0; i < names.length; i++) {
+            Node n = Node.of(100 + i, 37.87, -122.26);
+            if (names[i] != null) {
+                n.setName(names[i]);
+            }
+            nodes.add(n);
+        }
+        NameTable table = new NameTable(nodes);
+
+        assertEquals(5, table.size());
+        assertEquals(3, table.nameCount());
+        assertEquals(Arrays.asList("pizza hut", "peets", "pizza hut", "peets", "yalis"),
+                table.cleanNames());
+        assertEquals("peets", table.name(0));
+        assertEquals("pizza hut", table.name(1));
+        assertEquals("yalis", table.name(2));
+        assertEquals(1, table.nameId("pizza hut"));
+        assertEquals(-1, table.nameId("pizza"));
+
+        // rows 0 and 2 are the two Pizza Huts, nodes 100 and 103
+        int k = table.nameId("pizza hut");
+        assertEquals(2, table.rowsEnd(k) - table.rowsBegin(k));
+        assertEquals(100, table.id(table.row(table.rowsBegin(k))));
+        assertEquals(103, table.id(table.row(table.rowsBegin(k) + 1)));
+        assertEquals("pizza hut", table.node(table.row(table.rowsBegin(k) + 1)).name());
+        for (int r = 0; r < table.size(); r++) {
+            assertEquals(table.cleanNames().get(r), table.name(table.nameOf(r)));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.server.handler.impl.RasterAPIHandler;
+import bearmaps.utils.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that RasterAPIHandler's decoded tile cache draws the same rasters as decoding every
+ * tile, and its hits, misses and evictions over repeated requests. Run from the project
+ * directory so that Constants.IMG_ROOT finds the tile images.
+ */
+public class TestRasterTileCache {
+
+    /* Exposes the handler's whole response, tiles drawn and encoded, without Spark. */
+    private static class Renderer extends RasterAPIHandler {
+        Renderer(long cacheBytes) {
+            super(cacheBytes);
+        }
+
+        String render(Map<String, Double> params) {
+            return (String) buildJsonResponse(processRequest(params, null));
+        }
+
+        /* Returns the number of tiles the raster for PARAMS is drawn from. */
+        int tileCount(Map<String, Double> params) {
+            String[][] grid = (String[][]) processRequest(params, null).get("render_grid");
+            return grid.length * grid[0].length;
+        }
+
+        long stat(String name) {
+            return ((Number) tileCacheStats().get(name)).longValue();
+        }
+    }
+
+    /* The middle half of the root tile, in a window 1000 pixels wide. */
+    private static Map<String, Double> params() {
+        double width = Constants.ROOT_LRLON - Constants.ROOT_ULLON;
+        double height = Constants.ROOT_ULLAT - Constants.ROOT_LRLAT;
+        Map<String, Double> params = new HashMap<>();
+        params.put("ullon", Constants.ROOT_ULLON + width / 4);
+        params.put("lrlon", Constants.ROOT_LRLON - width / 4);
+        params.put("ullat", Constants.ROOT_ULLAT - height / 4);
+        params.put("lrlat", Constants.ROOT_LRLAT + height / 4);
+        params.put("w", 1000.0);
+        params.put("h", 700.0);
+        return params;
+    }
+
+    @Test
+    public void testRepeatHitsCache() {
+        Map<String, Double> params = params();
+        Renderer uncached = new Renderer(0);
+        Renderer cached = new Renderer(Constants.TILE_CACHE_BYTES);
+        int tiles = cached.tileCount(params);
+
+        String expected = uncached.render(params);
+        assertEquals(expected, cached.render(params));
+        assertEquals(tiles, cached.stat("entries"));
+        assertEquals(0, cached.stat("hits"));
+        assertEquals(tiles, cached.stat("misses"));
+
+        assertEquals(expected, cached.render(params));
+        assertEquals(tiles, cached.stat("entries"));
+        assertEquals(tiles, cached.stat("hits"));
+        assertEquals(tiles, cached.stat("misses"));
+        assertEquals(0, cached.stat("evictions"));
+
+        // a cache of 0 bytes stores nothing, so every tile is decoded every time
+        uncached.render(params);
+        assertEquals(0, uncached.stat("entries"));
+        assertEquals(0, uncached.stat("hits"));
+    }
+
+    @Test
+    public void testEvictsToBudget() {
+        Map<String, Double> params = params();
+        Renderer full = new Renderer(Constants.TILE_CACHE_BYTES);
+        String expected = full.render(params);
+        int tiles = full.tileCount(params);
+        long tileBytes = full.stat("bytes") / tiles;
+
+        // room for one tile: drawing the grid in order evicts each tile before it is drawn
+        // again, so the second pass misses every tile too
+        Renderer small = new Renderer(tileBytes);
+        assertEquals(expected, small.render(params));
+        assertEquals(expected, small.render(params));
+        assertEquals(1, small.stat("entries"));
+        assertEquals(tileBytes, small.stat("bytes"));
+        assertEquals(0, small.stat("hits"));
+        assertEquals(2 * tiles, small.stat("misses"));
+        assertEquals(2 * tiles - 1, small.stat("evictions"));
+    }
+}
@@ -0,0 +1,215 @@
+package bearmaps.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import bearmaps.Router;
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.LandmarkHeuristic;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.graph.streetmap.EdgeIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks the faster routing strategies against plain A* on the tiny graph, using the
+ * same start and destination locations as TestRouterTiny.
+ */
+public class TestRouterAlgorithms {
+    private static final String OSM_DB_PATH_TINY = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    /* Miles; the compact graph stores edge weights as floats. */
+    private static final double DELTA = 1e-4;
+    /* {start lon, start lat, destination lon, destination lat} */
+    private static final double[][] QUERIES = {
+        {0.2, 38.2, 0.6, 38.6},
+        {0.2, 38.2, 0.1, 38.1},
+        {0.4, 38.1, 0.4, 38.6},
+        {0.6, 38.6, 0.5, 38.5},
+    };
+    private static AugmentedStreetMapGraph graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testAStarMatchesReferenceSolver() {
+        for (double[] q : QUERIES) {
+            long src = graphTiny.closest(q[0], q[1]);
+            long dest = graphTiny.closest(q[2], q[3]);
+            AStarSolver<Long> reference = new AStarSolver<>(graphTiny, src, dest, 20);
+            ShortestPathsSolver<Long> solver =
+                    Router.solver(graphTiny, src, dest, Router.Algorithm.ASTAR);
+            assertEquals(SolverOutcome.SOLVED, solver.outcome());
+            assertEquals("Path from " + src + " to " + dest + " is incorrect.",
+                    reference.solution(), solver.solution());
+            assertEquals(reference.solutionWeight(), solver.solutionWeight(), DELTA);
+        }
+    }
+
+    @Test
+    public void testLazyAStarMatchesAStar() {
+        assertMatchesAStar(graphTiny, Router.Algorithm.LAZY_ASTAR);
+    }
+
+    @Test
+    public void testBidirectionalMatchesAStar() {
+        assertMatchesAStar(graphTiny, Router.Algorithm.BIDIRECTIONAL);
+    }
+
+    @Test
+    public void testContractionHierarchyMatchesAStar() {
+        assertMatchesAStar(graphTiny, Router.Algorithm.CH);
+    }
+
+    @Test
+    public void testLandmarksMatchAStar() {
+        assertMatchesAStar(graphTiny, Router.Algorithm.ALT);
+    }
+
+    @Test
+    public void testEdgeSnapAtNodesMatchesAStar() {
+        for (double[] q : QUERIES) {
+            long src = graphTiny.closest(q[0], q[1]);
+            long dest = graphTiny.closest(q[2], q[3]);
+            ShortestPathsSolver<Long> expected =
+                    Router.solver(graphTiny, src, dest, Router.Algorithm.ASTAR);
+            ShortestPathsSolver<Long> actual = Router.edgeSolver(graphTiny,
+                    graphTiny.edgeIndex().nearest(q[0], q[1]),
+                    graphTiny.edgeIndex().nearest(q[2], q[3]));
+            assertEquals(SolverOutcome.SOLVED, actual.outcome());
+            // the path may begin or end at the far end of a snapped edge instead, which ties
+            assertEquals("Edge-snapped route from " + src + " to " + dest + " is too long.",
+                    expected.solutionWeight(), actual.solutionWeight(), DELTA);
+        }
+    }
+
+    @Test
+    public void testEdgeSnapMidEdge() {
+        // halfway along 22 - 46, so the route leaves through 46 and pays half that edge
+        EdgeIndex.EdgeSnap start = graphTiny.edgeIndex().nearest(0.3, 38.4);
+        EdgeIndex.EdgeSnap dest = graphTiny.edgeIndex().nearest(0.6, 38.6);
+        double half = Router.solver(graphTiny, 22, 46, Router.Algorithm.ASTAR)
+                .solutionWeight() / 2;
+        double rest = Router.solver(graphTiny, 46, 66, Router.Algorithm.ASTAR).solutionWeight();
+
+        ShortestPathsSolver<Long> actual = Router.edgeSolver(graphTiny, start, dest);
+        assertEquals(46L, (long) actual.solution().get(0));
+        assertEquals(half + rest, actual.solutionWeight(), DELTA);
+        assertEquals(actual.solution(), Router.shortestPath(graphTiny, 0.3, 38.4,
+                0.6, 38.6, Router.Algorithm.ASTAR, Router.Snap.EDGE));
+    }
+
+    @Test
+    public void testEdgeSnapSameEdge() {
+        // a quarter and three quarters of the way along 46 - 66
+        EdgeIndex.EdgeSnap start = graphTiny.edgeIndex().nearest(0.45, 38.6);
+        EdgeIndex.EdgeSnap dest = graphTiny.edgeIndex().nearest(0.55, 38.6);
+        double edge = Router.solver(graphTiny, 46, 66, Router.Algorithm.ASTAR).solutionWeight();
+
+        ShortestPathsSolver<Long> actual = Router.edgeSolver(graphTiny, start, dest);
+        assertEquals(Arrays.asList(46L, 66L), actual.solution());
+        assertEquals(edge / 2, actual.solutionWeight(), DELTA);
+        actual = Router.edgeSolver(graphTiny, dest, start);
+        assertEquals(Arrays.asList(66L, 46L), actual.solution());
+        assertEquals(edge / 2, actual.solutionWeight(), DELTA);
+    }
+
+    @Test
+    public void testLandmarksSkipIsolatedVertex() throws IOException {
+        // a named node with no roads and the lowest id, so it is dense vertex 0
+        AugmentedStreetMapGraph graph = tinyGraphWith(
+                "<node id='1' lat='38.4' lon='0.3'><tag k='name' v='Lone Cafe'/></node>");
+        CompactStreetMapGraph compact = graph.compactGraph();
+        assertEquals(0, compact.indexOf(1));
+
+        int[] landmarks = new LandmarkHeuristic(compact, 3).landmarks();
+        for (int i = 0; i < landmarks.length; i++) {
+            assertNotEquals(0, landmarks[i]);
+            for (int j = 0; j < i; j++) {
+                assertNotEquals(landmarks[j], landmarks[i]);
+            }
+        }
+        assertMatchesAStar(graph, Router.Algorithm.ALT);
+    }
+
+    @Test
+    public void testContractionHierarchyZeroLengthEdges() throws IOException {
+        // 71, 72 and 73 share a location, as duplicated OSM nodes do, so the edges between
+        // them weigh 0 and they bridge 11 and 41
+        AugmentedStreetMapGraph graph = tinyGraphWith(
+                "<node id='71' lat='38.1' lon='0.3'></node>",
+                "<node id='72' lat='38.1' lon='0.3'></node>",
+                "<node id='73' lat='38.1' lon='0.3'></node>",
+                "<way id='5'><nd ref='11'/><nd ref='71'/><nd ref='72'/><nd ref='73'/>"
+                        + "<nd ref='41'/><tag k='highway' v='residential'/></way>");
+        CompactStreetMapGraph compact = graph.compactGraph();
+        for (int s = 0; s < compact.size(); s++) {
+            for (int t = 0; t < compact.size(); t++) {
+                long src = compact.id(s);
+                long dest = compact.id(t);
+                ShortestPathsSolver<Long> expected =
+                        Router.solver(graph, src, dest, Router.Algorithm.ASTAR);
+                ShortestPathsSolver<Long> actual =
+                        Router.solver(graph, src, dest, Router.Algorithm.CH);
+                assertEquals("CH found no path from " + src + " to " + dest + ".",
+                        SolverOutcome.SOLVED, actual.outcome());
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            }
+        }
+    }
+
+    /* Returns the tiny graph with the OSM elements EXTRA added, read from a temporary
+       file. */
+    private static AugmentedStreetMapGraph tinyGraphWith(String... extra) throws IOException {
+        File osm = File.createTempFile("tiny", ".osm.xml");
+        osm.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(osm, "UTF-8")) {
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm>");
+            for (String line : Files.readAllLines(Paths.get(OSM_DB_PATH_TINY))) {
+                if (line.startsWith("<node") || line.startsWith("<way")) {
+                    out.println(line);
+                }
+            }
+            for (String line : extra) {
+                out.println(line);
+            }
+            out.println("</osm>");
+        }
+        return new AugmentedStreetMapGraph(osm.getPath());
+    }
+
+    /* Asserts that ALGORITHM finds the same path as ASTAR on GRAPH, of the same weight, for
+       every query. */
+    private static void assertMatchesAStar(AugmentedStreetMapGraph graph,
+                                           Router.Algorithm algorithm) {
+        for (double[] q : QUERIES) {
+            long src = graph.closest(q[0], q[1]);
+            long dest = graph.closest(q[2], q[3]);
+            ShortestPathsSolver<Long> expected =
+                    Router.solver(graph, src, dest, Router.Algorithm.ASTAR);
+            ShortestPathsSolver<Long> actual = Router.solver(graph, src, dest, algorithm);
+            assertEquals(SolverOutcome.SOLVED, actual.outcome());
+            assertEquals(algorithm + " path from " + src + " to " + dest + " is incorrect.",
+                    expected.solution(), actual.solution());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package bearmaps.test;
+
+import org.junit.Test;
+import bearmaps.utils.graph.TokenIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks TokenIndex's multi-word search on a few names, and against scanning every name on
+ * enough random ones that posting lists span several skip blocks.
+ */
+public class TestTokenIndex {
+
+    @Test
+    public void testSearch() {
+        TokenIndex index = new TokenIndex(Arrays.asList("pizza on telegraph", "telegraph ave",
+                "pizza hut", " pizza  pizza ", ""));
+        assertEquals(5, index.size());
+        assertEquals(5, index.termCount());
+        assertEquals(3, index.frequency("pizza"));
+        assertEquals(0, index.frequency("pizz"));
+
+        assertArrayEquals(new int[]{0}, index.search("telegraph pizza", 0));
+        assertArrayEquals(new int[]{0}, index.search("pizza  telegraph pizza", 0));
+        assertArrayEquals(new int[]{0, 2, 3}, index.search("pizza", 0));
+        assertArrayEquals(new int[]{0, 2}, index.search("pizza", 2));
+        assertArrayEquals(new int[0], index.search("pizza ave", 0));
+        assertArrayEquals(new int[0], index.search("pizza sushi", 0));
+        assertArrayEquals(new int[0], index.search("  ", 0));
+    }
+
+    @Test
+    public void testSearchMatchesScan() {
+        Random random = new Random(22);
+        // word i is used about twice as often as word i + 1, so lists range from a few
+        // postings to thousands
+        String[] words = new String[12];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i;
+        }
+        List<String> names = new ArrayList<>();
+        for (int d = 0; d < 20000; d++) {
+            StringBuilder name = new StringBuilder();
+            for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                int w = Math.min(Integer.numberOfTrailingZeros(random.nextInt() | 1 << 11),
+                        words.length - 1);
+                name.append(words[w]).append(' ');
+            }
+            names.add(name.toString().trim());
+        }
+        TokenIndex index = new TokenIndex(names);
+
+        for (int q = 0; q < 300; q++) {
+            List<String> query = new ArrayList<>();
+            for (int k = 1 + random.nextInt(3); k > 0; k--) {
+                query.add(words[random.nextInt(words.length)]);
+            }
+            int limit = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(200);
+            List<Integer> expected = new ArrayList<>();
+            for (int d = 0; d < names.size() && (limit == 0 || expected.size() < limit); d++) {
+                if (Arrays.asList(names.get(d).split(" ")).containsAll(query)) {
+                    expected.add(d);
+                }
+            }
+            int[] actual = index.search(String.join(" ", query), limit);
+            assertEquals("Matches for " + query + " are incorrect.", expected.size(),
+                    actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals((int) expected.get(i), actual[i]);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bearmaps.utils;
 
 import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.ps.PointSetType;
 
 import java.awt.*;
 import java.util.LinkedList;
@@ -39,6 +40,16 @@ public class Constants {
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
+    /** Bytes of decoded tile pixels the raster handler keeps, a few hundred tiles. */
+    public static final long TILE_CACHE_BYTES = 64L << 20;
+
+    /** The PointSet the street graph uses to find the node closest to a location. */
+    public static final PointSetType POINT_SET_TYPE = PointSetType.ARRAY_KD_TREE;
+
+    /** Bounds of the cache of /search responses: entries, and bytes of JSON. */
+    public static final int SEARCH_CACHE_ENTRIES = 4096;
+    public static final long SEARCH_CACHE_BYTES = 8L << 20;
+
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
     /**
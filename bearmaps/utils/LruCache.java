@@ -0,0 +1,120 @@
+package bearmaps.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe least-recently-used cache bounded both by entry count and by an estimate
+ * of the bytes its values take, for memoizing responses in the request handlers.
+ *
+ * Entries live in a LinkedHashMap in access order, so the least recently used one is at
+ * the head and evicted first whenever either bound is exceeded. The weigher supplies each
+ * value's size in bytes; a value larger than the whole byte budget is not stored. Every
+ * operation takes the cache's lock, so callers should compute a missing value outside
+ * it and put it afterwards. Hits, misses and evictions are counted for monitoring.
+ */
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache holding at most MAXENTRIES values whose WEIGHER sizes add up to at
+     * most MAXBYTES.
+     */
+    public LruCache(int maxEntries, long maxBytes, ToLongFunction<V> weigher) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Cache bounds must not be negative.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /** Returns the value cached for KEY, marking it most recently used, or null. */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /** Caches VALUE for KEY, replacing any old value, and evicts down to the bounds. */
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        V old = entries.remove(key);
+        if (old != null) {
+            bytes -= weigher.applyAsLong(old);
+        }
+        if (weight > maxBytes || maxEntries == 0) {
+            return;
+        }
+        entries.put(key, value);
+        bytes += weight;
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /** Removes every entry; the counters are kept. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Returns the summed weight of the cached values. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /** Returns the fraction of lookups so far that were hits, or 0 before any lookup. */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /** Returns the bounds, occupancy and counters as a map, e.g. for a JSON response. */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("max_entries", maxEntries);
+        stats.put("bytes", bytes);
+        stats.put("max_bytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("hit_rate", hitRate());
+        return stats;
+    }
+}
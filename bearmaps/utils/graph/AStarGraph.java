@@ -9,4 +9,15 @@ import java.util.List;
 public interface AStarGraph<Vertex> {
     List<WeightedEdge<Vertex>> neighbors(Vertex v);
     double estimatedDistanceToGoal(Vertex s, Vertex goal);
+
+    /**
+     * Calls VISITOR once for every outgoing edge of V. The default goes through
+     * neighbors(v); graphs that can walk their adjacency in place should override this
+     * so that searches do not allocate a list per expanded vertex.
+     */
+    default void forEachNeighbor(Vertex v, EdgeVisitor<Vertex> visitor) {
+        for (WeightedEdge<Vertex> e : neighbors(v)) {
+            visitor.visit(e.from(), e.to(), e.weight());
+        }
+    }
 }
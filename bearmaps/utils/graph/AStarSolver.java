@@ -1,6 +1,6 @@
 
 package bearmaps.utils.graph;
-import bearmaps.utils.pq.MinHeapPQ;
+import bearmaps.utils.pq.ArrayHeapPQ;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.util.HashMap;
@@ -14,18 +14,24 @@ public class AStarSolver<Vertex>  implements ShortestPathsSolver<Vertex> {
     private double solutionWeight = 0;
     private int numStatesExplored;
     private double explorationTime; // keep track of time using the stopwatch class
-    private MinHeapPQ<Vertex> fringe ;
+    private ArrayHeapPQ<Vertex> fringe ;
     private HashMap<Vertex, Double> distances;
     private HashMap<Vertex, Vertex> edgeTos;
+    private AStarGraph<Vertex> graph;
+    private Vertex goal;
+    // one visitor per solve, so expanding a vertex does not allocate a list or a lambda
+    private final EdgeVisitor<Vertex> relaxer = this::relax;
 
     // need to figure out how to: add to solution at the appropriate time, and keep track of needed distances
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
 
         // initializing variables
         Stopwatch tracker = new Stopwatch();
-        fringe = new MinHeapPQ<>();
+        fringe = new ArrayHeapPQ<>();
         distances = new HashMap();
         edgeTos = new HashMap();
+        graph = input;
+        goal = end;
 
         // adding start to fringe and trackers
         double priorityValueOfSource = input.estimatedDistanceToGoal(start, end);
@@ -52,9 +58,7 @@ public class AStarSolver<Vertex>  implements ShortestPathsSolver<Vertex> {
             Vertex curr = fringe.poll();
             numStatesExplored++;
 
-            for (WeightedEdge edge : input.neighbors(curr)) {
-                relax(edge, input, end);
-            }
+            input.forEachNeighbor(curr, relaxer);
 
             explorationTime = tracker.elapsedTime();
         }
@@ -77,11 +81,13 @@ public class AStarSolver<Vertex>  implements ShortestPathsSolver<Vertex> {
     }
 
     public void relax (WeightedEdge<Vertex> edge, AStarGraph<Vertex> input, Vertex goal) {
+        graph = input;
+        this.goal = goal;
+        relax(edge.from(), edge.to(), edge.weight());
+    }
 
-        // getting needed variables
-        Vertex from =  edge.from();
-        Vertex to = edge.to();
-        double weight = edge.weight();
+    private void relax(Vertex from, Vertex to, double weight) {
+        AStarGraph<Vertex> input = graph;
 
         double newDistance = distances.get(from) + weight;
 
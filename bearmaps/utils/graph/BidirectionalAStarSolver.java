@@ -0,0 +1,176 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.pq.LazyDoubleHeap;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bidirectional A* over a CompactStreetMapGraph, searching forward from the start and
+ * backward from the goal at the same time.
+ *
+ * Both directions use the average potential p(v) = (h(v, goal) - h(v, start)) / 2, with
+ * h the great-circle distance: the forward search orders by d(start, v) + p(v) and the
+ * backward search by d(v, goal) - p(v). Under that pair of potentials both searches see
+ * the same non-negative reduced edge costs, so the usual bidirectional Dijkstra stopping
+ * rule applies: once the two smallest keys sum to at least the best meeting path found
+ * so far, that path is shortest.
+ *
+ * The backward search walks outgoing edges as if they were incoming, so this assumes the
+ * graph is symmetric, which holds for graphs built by GraphBuildingHandler.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Long> {
+
+    /* How many vertices to settle between timeout checks. */
+    private static final int TIMEOUT_CHECK_INTERVAL = 256;
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight = 0;
+    private int forwardStatesExplored;
+    private int backwardStatesExplored;
+    private double explorationTime;
+
+    /* Search state shared by the two expansion steps. */
+    private final CompactStreetMapGraph graph;
+    private final int source;
+    private final int target;
+    private double best = Double.POSITIVE_INFINITY;
+    private int meeting = -1;
+
+    public BidirectionalAStarSolver(CompactStreetMapGraph input, long start, long end,
+                                    double timeout) {
+        this(input, start, end, timeout,
+                new SearchWorkspace(input.size()), new SearchWorkspace(input.size()));
+    }
+
+    /**
+     * Solves using FORWARD and BACKWARD as the per-vertex state of the two searches. Both
+     * must hold at least input.size() vertices and must be distinct; they are reset here.
+     */
+    public BidirectionalAStarSolver(CompactStreetMapGraph input, long start, long end,
+                                    double timeout, SearchWorkspace forward,
+                                    SearchWorkspace backward) {
+        Stopwatch tracker = new Stopwatch();
+        graph = input;
+        source = input.indexOf(start);
+        target = input.indexOf(end);
+
+        forward.reset();
+        backward.reset();
+        LazyDoubleHeap forwardFringe = forward.lazyFringe();
+        LazyDoubleHeap backwardFringe = backward.lazyFringe();
+        forward.update(source, 0, -1);
+        backward.update(target, 0, -1);
+        forwardFringe.push(source, potential(source));
+        backwardFringe.push(target, -potential(target));
+        if (source == target) {
+            best = 0;
+            meeting = source;
+        }
+
+        outcome = SolverOutcome.UNSOLVABLE;
+        while (true) {
+            discardSettled(forwardFringe, forward);
+            discardSettled(backwardFringe, backward);
+            if (forwardFringe.size() == 0 || backwardFringe.size() == 0) {
+                break;
+            }
+            if (forwardFringe.peekPriority() + backwardFringe.peekPriority() >= best) {
+                break;
+            }
+            if (numStatesExplored() % TIMEOUT_CHECK_INTERVAL == 0
+                    && tracker.elapsedTime() >= timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                break;
+            }
+
+            if (forwardFringe.peekPriority() <= backwardFringe.peekPriority()) {
+                expand(forwardFringe, forward, backward, 1);
+                forwardStatesExplored++;
+            } else {
+                expand(backwardFringe, backward, forward, -1);
+                backwardStatesExplored++;
+            }
+        }
+
+        if (outcome != SolverOutcome.TIMEOUT && meeting != -1) {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            for (int v = meeting; v != -1; v = forward.parent(v)) {
+                solution.add(input.id(v));
+            }
+            Collections.reverse(solution);
+            for (int v = backward.parent(meeting); v != -1; v = backward.parent(v)) {
+                solution.add(input.id(v));
+            }
+        }
+        explorationTime = tracker.elapsedTime();
+    }
+
+    /* Returns the average potential of dense vertex V. */
+    private double potential(int v) {
+        return (graph.estimatedDistance(v, target) - graph.estimatedDistance(v, source)) / 2;
+    }
+
+    /* Pops entries off the top of FRINGE whose vertex WORKSPACE has already settled. */
+    private static void discardSettled(LazyDoubleHeap fringe, SearchWorkspace workspace) {
+        while (fringe.size() != 0 && workspace.settled(fringe.peek())) {
+            fringe.poll();
+        }
+    }
+
+    /* Settles the top vertex of FRINGE and relaxes its edges. SIGN is 1 for the forward
+       search and -1 for the backward one; OTHER is the opposite search's state. */
+    private void expand(LazyDoubleHeap fringe, SearchWorkspace mine, SearchWorkspace other,
+                        int sign) {
+        int curr = fringe.poll();
+        mine.settle(curr);
+        double currDist = mine.dist(curr);
+        for (int e = graph.edgesBegin(curr); e < graph.edgesEnd(curr); e++) {
+            int to = graph.target(e);
+            double newDistance = currDist + graph.weight(e);
+            if (newDistance < mine.dist(to)) {
+                mine.update(to, newDistance, curr);
+                fringe.push(to, newDistance + sign * potential(to));
+                double through = newDistance + other.dist(to);
+                if (through < best) {
+                    best = through;
+                    meeting = to;
+                }
+            }
+        }
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    /** Returns the total number of vertices settled by both directions. */
+    public int numStatesExplored() {
+        return forwardStatesExplored + backwardStatesExplored;
+    }
+
+    public int forwardStatesExplored() {
+        return forwardStatesExplored;
+    }
+
+    public int backwardStatesExplored() {
+        return backwardStatesExplored;
+    }
+
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
@@ -0,0 +1,425 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.TrieSet61BL;
+import bearmaps.utils.pq.LazyDoubleHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A TrieSet61BL stored in a few flat primitive arrays instead of a Node object and a
+ * HashMap per character, for the location names of a whole map.
+ *
+ * Node 0 is the root. Node v is reached by character label[v]; its children form a
+ * linked list starting at firstChild[v] and continuing through nextSibling, kept in
+ * increasing label order so keys come out sorted. A missing link is -1. Node v ends a
+ * key if bit v of terminal is set. Each node costs 22 bytes plus a bit, against well
+ * over 100 for a MyTrieSet node, and searching touches no boxed characters.
+ *
+ * Every key also has a score, and best[v] is the highest score of any key below v, so
+ * topKeysWithPrefix can expand the most promising subtree first and stop after k keys.
+ */
+public class CompactTrieSet implements TrieSet61BL {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private char[] label;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] parent;
+    private int[] score;
+    private int[] best;
+    private long[] terminal;
+    private int nodes;
+    private int keys;
+
+    public CompactTrieSet() {
+        clear();
+    }
+
+    /**
+     * Clears all items out of Trie
+     */
+    @Override
+    public void clear() {
+        label = new char[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        nextSibling = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        score = new int[INITIAL_CAPACITY];
+        best = new int[INITIAL_CAPACITY];
+        terminal = new long[(INITIAL_CAPACITY + 63) / 64];
+        nodes = 0;
+        keys = 0;
+        newNode('\0', -1);
+    }
+
+    /**
+     * Returns true if the Trie contains KEY, false otherwise
+     */
+    @Override
+    public boolean contains(String key) {
+        if (key == null || key.length() < 1) {
+            return false;
+        }
+        int v = find(key);
+        return v >= 0 && isTerminal(v);
+    }
+
+    /**
+     * Inserts string KEY into Trie with score 0, or leaves its score as it is
+     */
+    @Override
+    public void add(String key) {
+        add(key, 0);
+    }
+
+    /**
+     * Inserts string KEY into Trie, raising its score to KEYSCORE if it is lower. Scores
+     * must not be negative.
+     */
+    public void add(String key, int keyScore) {
+        if (key == null || key.length() < 1) {
+            return;
+        }
+        if (keyScore < 0) {
+            throw new IllegalArgumentException("Scores must not be negative.");
+        }
+        int v = 0;
+        best[0] = Math.max(best[0], keyScore);
+        for (int i = 0; i < key.length(); i++) {
+            v = childOrAdd(v, key.charAt(i));
+            best[v] = Math.max(best[v], keyScore);
+        }
+        if (!isTerminal(v)) {
+            terminal[v >>> 6] |= 1L << v;
+            keys++;
+        }
+        score[v] = Math.max(score[v], keyScore);
+    }
+
+    /** Returns the score of KEY, or -1 if it is not in the Trie. */
+    public int score(String key) {
+        int v = key == null || key.isEmpty() ? -1 : find(key);
+        return v >= 0 && isTerminal(v) ? score[v] : -1;
+    }
+
+    /**
+     * Returns a list of all words that start with PREFIX, in sorted order
+     */
+    @Override
+    public List<String> keysWithPrefix(String prefix) {
+        List<String> returned = new ArrayList<>();
+        int v = find(prefix);
+        if (v < 0) {
+            return returned;
+        }
+        StringBuilder key = new StringBuilder(prefix);
+        if (v != 0 && isTerminal(v)) {
+            returned.add(prefix);
+        }
+        collect(firstChild[v], key, returned);
+        return returned;
+    }
+
+    /**
+     * Returns at most K keys that start with PREFIX, highest score first.
+     *
+     * A best-first search: the heap holds subtrees keyed on their best score and keys on
+     * their own score, so a key is only taken once no unexplored subtree could beat it.
+     * Only the subtrees along the way to the K results are opened.
+     */
+    public List<String> topKeysWithPrefix(String prefix, int k) {
+        List<String> returned = new ArrayList<>();
+        int v = find(prefix);
+        if (v < 0 || k <= 0) {
+            return returned;
+        }
+        // entry 2u opens the subtree under u, entry 2u + 1 is the key ending at u
+        LazyDoubleHeap heap = new LazyDoubleHeap(4 * k);
+        if (v != 0 && isTerminal(v)) {
+            heap.push(2 * v + 1, keyPriority(v));
+        }
+        for (int w = firstChild[v]; w >= 0; w = nextSibling[w]) {
+            heap.push(2 * w, subtreePriority(w));
+        }
+        while (heap.size() > 0 && returned.size() < k) {
+            int entry = heap.poll();
+            int u = entry >>> 1;
+            if ((entry & 1) == 1) {
+                returned.add(keyOf(u));
+                continue;
+            }
+            if (isTerminal(u)) {
+                heap.push(2 * u + 1, keyPriority(u));
+            }
+            for (int w = firstChild[u]; w >= 0; w = nextSibling[w]) {
+                heap.push(2 * w, subtreePriority(w));
+            }
+        }
+        return returned;
+    }
+
+    /* Heap priorities for topKeysWithPrefix, smallest first. Scores are whole numbers, so
+       the fractions only break ties: a key before any subtree of the same score, and
+       otherwise the newer node, which is never an ancestor of an older one. Without that,
+       ties would open every equally good subtree before finishing any. */
+    private double keyPriority(int v) {
+        return -score[v] - 0.75;
+    }
+
+    private double subtreePriority(int v) {
+        return -best[v] - 0.5 * v / nodes;
+    }
+
+    /**
+     * Returns at most LIMIT keys that start with something within MAXEDITS edits of
+     * PREFIX, closest first and then highest score first, or all of them if LIMIT is not
+     * positive. An edit inserts, deletes or replaces one character.
+     *
+     * The search walks the trie carrying one row of the Levenshtein table per depth: row
+     * entry i is the edit distance between the first i characters of PREFIX and the path
+     * so far, so the rows act as the states of a Levenshtein automaton run over every
+     * path at once. A subtree is skipped as soon as its row has no entry within MAXEDITS,
+     * and once no deeper node could bring the distance down, the rest of the subtree is
+     * collected without further rows.
+     */
+    public List<String> fuzzyKeysWithPrefix(String prefix, int maxEdits, int limit) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Edit distance must not be negative.");
+        }
+        FuzzySearch search = new FuzzySearch(prefix, maxEdits);
+        int[] first = search.row(0);
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        search.visit(0, 1, prefix.length() <= maxEdits ? prefix.length() : Integer.MAX_VALUE);
+
+        // distance, then falling score, then trie (sorted) order
+        long[] ranked = new long[search.count];
+        for (int j = 0; j < search.count; j++) {
+            int v = search.matches[j];
+            ranked[j] = (long) Math.min(search.distances[j], 31) << 58
+                    | (long) (Integer.MAX_VALUE - score[v]) << 27 | j;
+        }
+        Arrays.sort(ranked);
+        int n = limit > 0 ? Math.min(limit, ranked.length) : ranked.length;
+        List<String> returned = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) {
+            returned.add(keyOf(search.matches[(int) (ranked[j] & ((1 << 27) - 1))]));
+        }
+        return returned;
+    }
+
+    /* State of one fuzzyKeysWithPrefix call: the query, a reusable row per depth, and the
+       matching key nodes found so far with their distances. */
+    private class FuzzySearch {
+        private final String query;
+        private final int maxEdits;
+        private int[][] rows = new int[16][];
+        private int[] matches = new int[16];
+        private int[] distances = new int[16];
+        private int count;
+
+        FuzzySearch(String query, int maxEdits) {
+            this.query = query;
+            this.maxEdits = maxEdits;
+        }
+
+        int[] row(int depth) {
+            if (depth == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * depth);
+            }
+            if (rows[depth] == null) {
+                rows[depth] = new int[query.length() + 1];
+            }
+            return rows[depth];
+        }
+
+        /* Extends the row of V, at DEPTH - 1, to each of V's children. MATCHED is the
+           smallest distance between the whole query and a prefix of the path to V, or
+           Integer.MAX_VALUE if none is within maxEdits yet. */
+        void visit(int v, int depth, int matched) {
+            int m = query.length();
+            int[] prev = rows[depth - 1];
+            for (int w = firstChild[v]; w >= 0; w = nextSibling[w]) {
+                int[] row = row(depth);
+                char c = label[w];
+                row[0] = prev[0] + 1;
+                int lowest = row[0];
+                for (int i = 1; i <= m; i++) {
+                    int cost = query.charAt(i - 1) == c ? 0 : 1;
+                    row[i] = Math.min(Math.min(prev[i], row[i - 1]) + 1, prev[i - 1] + cost);
+                    lowest = Math.min(lowest, row[i]);
+                }
+                int distance = row[m] <= maxEdits ? Math.min(matched, row[m]) : matched;
+                if (distance != Integer.MAX_VALUE && isTerminal(w)) {
+                    add(w, distance);
+                }
+                if (lowest >= distance) {
+                    // nothing below can do better than this prefix already does
+                    if (distance != Integer.MAX_VALUE) {
+                        collectAll(firstChild[w], distance);
+                    }
+                } else if (lowest <= maxEdits) {
+                    visit(w, depth + 1, distance);
+                }
+            }
+        }
+
+        /* Adds every key below the sibling list starting at V at DISTANCE. */
+        void collectAll(int v, int distance) {
+            for (; v >= 0; v = nextSibling[v]) {
+                if (isTerminal(v)) {
+                    add(v, distance);
+                }
+                collectAll(firstChild[v], distance);
+            }
+        }
+
+        private void add(int v, int distance) {
+            if (count == matches.length) {
+                matches = Arrays.copyOf(matches, 2 * count);
+                distances = Arrays.copyOf(distances, 2 * count);
+            }
+            matches[count] = v;
+            distances[count] = distance;
+            count++;
+        }
+    }
+
+    /* Returns the key spelled by the path from the root to V. */
+    private String keyOf(int v) {
+        int length = 0;
+        for (int u = v; u > 0; u = parent[u]) {
+            length++;
+        }
+        char[] chars = new char[length];
+        for (int u = v; u > 0; u = parent[u]) {
+            chars[--length] = label[u];
+        }
+        return new String(chars);
+    }
+
+    /* Appends every key below the sibling list starting at V to RETURNED, with KEY holding
+       the characters on the path to V's parent. */
+    private void collect(int v, StringBuilder key, List<String> returned) {
+        for (; v >= 0; v = nextSibling[v]) {
+            key.append(label[v]);
+            if (isTerminal(v)) {
+                returned.add(key.toString());
+            }
+            collect(firstChild[v], key, returned);
+            key.setLength(key.length() - 1);
+        }
+    }
+
+    /**
+     * Returns the longest prefix of KEY that is in the Trie, or the empty string if none is
+     */
+    @Override
+    public String longestPrefixOf(String key) {
+        int longest = 0;
+        int v = 0;
+        for (int i = 0; i < key.length() && v >= 0; i++) {
+            v = child(v, key.charAt(i));
+            if (v >= 0 && isTerminal(v)) {
+                longest = i + 1;
+            }
+        }
+        return key.substring(0, longest);
+    }
+
+    /** Returns the number of distinct keys. */
+    public int size() {
+        return keys;
+    }
+
+    /** Returns the number of trie nodes, including the root. */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /** Releases the spare capacity left by growing the arrays, e.g. once loading is done. */
+    public void trimToSize() {
+        label = Arrays.copyOf(label, nodes);
+        firstChild = Arrays.copyOf(firstChild, nodes);
+        nextSibling = Arrays.copyOf(nextSibling, nodes);
+        parent = Arrays.copyOf(parent, nodes);
+        score = Arrays.copyOf(score, nodes);
+        best = Arrays.copyOf(best, nodes);
+        terminal = Arrays.copyOf(terminal, (nodes + 63) / 64);
+    }
+
+    /** Returns the bytes taken by the arrays, including unused capacity. */
+    public long estimatedBytes() {
+        return 2L * label.length + 4L * (firstChild.length + nextSibling.length
+                + parent.length + score.length + best.length) + 8L * terminal.length;
+    }
+
+    /* Returns the node reached from the root by the characters of KEY, or -1. */
+    private int find(String key) {
+        int v = 0;
+        for (int i = 0; i < key.length() && v >= 0; i++) {
+            v = child(v, key.charAt(i));
+        }
+        return v;
+    }
+
+    /* Returns the child of V labelled C, or -1. */
+    private int child(int v, char c) {
+        for (int w = firstChild[v]; w >= 0 && label[w] <= c; w = nextSibling[w]) {
+            if (label[w] == c) {
+                return w;
+            }
+        }
+        return -1;
+    }
+
+    /* Returns the child of V labelled C, linking in a new one at its sorted place if there
+       is none. */
+    private int childOrAdd(int v, char c) {
+        int prev = -1;
+        int w = firstChild[v];
+        while (w >= 0 && label[w] < c) {
+            prev = w;
+            w = nextSibling[w];
+        }
+        if (w >= 0 && label[w] == c) {
+            return w;
+        }
+        int created = newNode(c, v);
+        nextSibling[created] = w;
+        if (prev < 0) {
+            firstChild[v] = created;
+        } else {
+            nextSibling[prev] = created;
+        }
+        return created;
+    }
+
+    private int newNode(char c, int from) {
+        if (nodes == label.length) {
+            int capacity = Math.max(2 * nodes, INITIAL_CAPACITY);
+            label = Arrays.copyOf(label, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            score = Arrays.copyOf(score, capacity);
+            best = Arrays.copyOf(best, capacity);
+            terminal = Arrays.copyOf(terminal, (capacity + 63) / 64);
+        }
+        label[nodes] = c;
+        firstChild[nodes] = -1;
+        nextSibling[nodes] = -1;
+        parent[nodes] = from;
+        score[nodes] = 0;
+        best[nodes] = 0;
+        return nodes++;
+    }
+
+    private boolean isTerminal(int v) {
+        return (terminal[v >>> 6] & (1L << v)) != 0;
+    }
+}
@@ -0,0 +1,422 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.pq.LazyDoubleHeap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A contraction hierarchy over a CompactStreetMapGraph: every vertex gets a rank, and the
+ * graph is augmented with shortcut edges so that any shortest path can be found by two
+ * searches that only ever move to higher-ranked vertices (see ContractionHierarchySolver).
+ *
+ * Preprocessing contracts vertices in rounds. Each round picks an independent set of
+ * vertices whose priority (edge difference plus number of already contracted neighbors)
+ * is a local minimum, runs their witness searches in parallel on the common fork/join
+ * pool, then applies the resulting shortcuts. A witness search for v avoids the vertices of
+ * the same round with a smaller index, so the round has the same result as contracting
+ * its set one vertex at a time in index order.
+ *
+ * The result is stored as a CSR "upward" graph: for each vertex, the edges to its
+ * higher-ranked neighbors. A shortcut remembers the vertex it bypasses, which is enough
+ * to unpack it back into original edges. Like BidirectionalAStarSolver this treats the
+ * graph as undirected, which holds for graphs built by GraphBuildingHandler.
+ */
+public class ContractionHierarchy {
+
+    /* Vertices a single witness search may settle before it gives up and assumes
+       there is no witness. Giving up early only costs extra shortcuts. */
+    private static final int WITNESS_SETTLE_LIMIT = 200;
+
+    private final CompactStreetMapGraph graph;
+    private final int[] rank;
+
+    /* Upward CSR graph; upMids[e] is the bypassed vertex of a shortcut, or -1. */
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upMids;
+
+    private final int shortcutCount;
+    private final int rounds;
+    private final double buildSeconds;
+
+    public ContractionHierarchy(CompactStreetMapGraph graph) {
+        long start = System.nanoTime();
+        this.graph = graph;
+        Builder builder = new Builder(graph);
+        builder.contractAll();
+
+        int n = graph.size();
+        rank = builder.rank;
+        upOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] = upOffsets[v] + builder.upSize[v];
+        }
+        int m = upOffsets[n];
+        upTargets = new int[m];
+        upWeights = new double[m];
+        upMids = new int[m];
+        for (int v = 0; v < n; v++) {
+            int size = builder.upSize[v];
+            if (size > 0) {
+                System.arraycopy(builder.upTo[v], 0, upTargets, upOffsets[v], size);
+                System.arraycopy(builder.upW[v], 0, upWeights, upOffsets[v], size);
+                System.arraycopy(builder.upMid[v], 0, upMids, upOffsets[v], size);
+            }
+        }
+        shortcutCount = builder.shortcuts;
+        rounds = builder.round;
+        buildSeconds = (System.nanoTime() - start) / 1e9;
+    }
+
+    public CompactStreetMapGraph graph() {
+        return graph;
+    }
+
+    /** Returns the contraction rank of dense vertex V; higher means contracted later. */
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    /* Upward edge cursor, in the same style as CompactStreetMapGraph's edge cursor. */
+
+    public int upBegin(int v) {
+        return upOffsets[v];
+    }
+
+    public int upEnd(int v) {
+        return upOffsets[v + 1];
+    }
+
+    public int upTarget(int e) {
+        return upTargets[e];
+    }
+
+    public double upWeight(int e) {
+        return upWeights[e];
+    }
+
+    /** Returns the number of shortcut edges added during preprocessing. */
+    public int shortcutCount() {
+        return shortcutCount;
+    }
+
+    /** Returns the number of parallel contraction rounds preprocessing took. */
+    public int rounds() {
+        return rounds;
+    }
+
+    /** Returns the wall-clock preprocessing time in seconds. */
+    public double buildSeconds() {
+        return buildSeconds;
+    }
+
+    /**
+     * Appends to OUT the OSM ids of the original path represented by the hierarchy edge
+     * between dense vertices FROM and TO, excluding FROM itself and ending with TO.
+     */
+    public void unpack(int from, int to, List<Long> out) {
+        int lower = rank[from] < rank[to] ? from : to;
+        int higher = lower == from ? to : from;
+        int mid = -1;
+        for (int e = upOffsets[lower]; e < upOffsets[lower + 1]; e++) {
+            if (upTargets[e] == higher) {
+                mid = upMids[e];
+                break;
+            }
+        }
+        if (mid == -1) {
+            out.add(graph.id(to));
+        } else {
+            unpack(from, mid, out);
+            unpack(mid, to, out);
+        }
+    }
+
+    /**
+     * Mutable preprocessing state. The adjacency of every uncontracted vertex lives in
+     * growable parallel arrays; edges to a vertex are removed when it is contracted.
+     */
+    private static class Builder {
+        private final int n;
+        private final int[][] adjTo;
+        private final double[][] adjW;
+        private final int[][] adjMid;
+        private final int[] adjSize;
+
+        private final boolean[] contracted;
+        private final int[] contractingRound;
+        private final int[] deletedNeighbors;
+        private final int[] priority;
+        private final int[] rank;
+
+        private final int[][] upTo;
+        private final double[][] upW;
+        private final int[][] upMid;
+        private final int[] upSize;
+
+        private final ThreadLocal<SearchWorkspace> workspaces;
+        private int shortcuts;
+        private int round;
+
+        Builder(CompactStreetMapGraph g) {
+            n = g.size();
+            adjTo = new int[n][];
+            adjW = new double[n][];
+            adjMid = new int[n][];
+            adjSize = new int[n];
+            contracted = new boolean[n];
+            contractingRound = new int[n];
+            deletedNeighbors = new int[n];
+            priority = new int[n];
+            rank = new int[n];
+            upTo = new int[n][];
+            upW = new double[n][];
+            upMid = new int[n][];
+            upSize = new int[n];
+            workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(n));
+            Arrays.fill(contractingRound, -1);
+
+            for (int v = 0; v < n; v++) {
+                int degree = g.edgesEnd(v) - g.edgesBegin(v);
+                adjTo[v] = new int[Math.max(degree, 2)];
+                adjW[v] = new double[Math.max(degree, 2)];
+                adjMid[v] = new int[Math.max(degree, 2)];
+                for (int e = g.edgesBegin(v); e < g.edgesEnd(v); e++) {
+                    if (g.target(e) != v) {
+                        addEdge(v, g.target(e), g.weight(e), -1);
+                    }
+                }
+            }
+        }
+
+        void contractAll() {
+            IntStream.range(0, n).parallel().forEach(v -> priority[v] = simulate(v, null));
+            int remaining = n;
+            int nextRank = 0;
+            boolean[] dirty = new boolean[n];
+            while (remaining > 0) {
+                round++;
+                int[] selected = IntStream.range(0, n).parallel()
+                        .filter(v -> !contracted[v] && isLocalMinimum(v)).toArray();
+                for (int v : selected) {
+                    contractingRound[v] = round;
+                }
+
+                ShortcutList[] found = new ShortcutList[selected.length];
+                IntStream.range(0, selected.length).parallel().forEach(i -> {
+                    found[i] = new ShortcutList();
+                    simulate(selected[i], found[i]);
+                });
+
+                for (int i = 0; i < selected.length; i++) {
+                    int v = selected[i];
+                    recordUpwardEdges(v);
+                    contracted[v] = true;
+                    rank[v] = nextRank;
+                    nextRank++;
+                    ShortcutList s = found[i];
+                    for (int k = 0; k < s.size; k++) {
+                        addEdge(s.from[k], s.to[k], s.weight[k], v);
+                        addEdge(s.to[k], s.from[k], s.weight[k], v);
+                    }
+                    shortcuts += s.size;
+                    for (int k = 0; k < adjSize[v]; k++) {
+                        int u = adjTo[v][k];
+                        if (!contracted[u]) {
+                            removeEdge(u, v);
+                            deletedNeighbors[u]++;
+                            dirty[u] = true;
+                        }
+                    }
+                    adjTo[v] = null;
+                    adjW[v] = null;
+                    adjMid[v] = null;
+                    adjSize[v] = 0;
+                }
+                remaining -= selected.length;
+
+                IntStream.range(0, n).parallel().filter(v -> dirty[v] && !contracted[v])
+                        .forEach(v -> {
+                            priority[v] = simulate(v, null);
+                            dirty[v] = false;
+                        });
+            }
+        }
+
+        /* Returns true if V's priority is smaller than that of every uncontracted
+           neighbor, breaking ties by vertex index. */
+        private boolean isLocalMinimum(int v) {
+            for (int k = 0; k < adjSize[v]; k++) {
+                int u = adjTo[v][k];
+                if (!contracted[u]
+                        && (priority[u] < priority[v] || (priority[u] == priority[v] && u < v))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /* Copies V's edges to uncontracted neighbors into its upward edge list. */
+        private void recordUpwardEdges(int v) {
+            int count = 0;
+            for (int k = 0; k < adjSize[v]; k++) {
+                if (!contracted[adjTo[v][k]]) {
+                    count++;
+                }
+            }
+            upTo[v] = new int[count];
+            upW[v] = new double[count];
+            upMid[v] = new int[count];
+            for (int k = 0; k < adjSize[v]; k++) {
+                if (!contracted[adjTo[v][k]]) {
+                    upTo[v][upSize[v]] = adjTo[v][k];
+                    upW[v][upSize[v]] = adjW[v][k];
+                    upMid[v][upSize[v]] = adjMid[v][k];
+                    upSize[v]++;
+                }
+            }
+        }
+
+        /**
+         * Works out which shortcuts contracting V would need, appending them to OUT if it
+         * is not null, and returns V's priority. Only reads shared state, so it is safe to
+         * run for many vertices in parallel between rounds.
+         */
+        private int simulate(int v, ShortcutList out) {
+            int[] neighbors = new int[adjSize[v]];
+            double[] weights = new double[adjSize[v]];
+            int degree = 0;
+            for (int k = 0; k < adjSize[v]; k++) {
+                int u = adjTo[v][k];
+                if (!contracted[u]) {
+                    neighbors[degree] = u;
+                    weights[degree] = adjW[v][k];
+                    degree++;
+                }
+            }
+
+            int needed = 0;
+            SearchWorkspace ws = workspaces.get();
+            for (int i = 0; i + 1 < degree; i++) {
+                double limit = 0;
+                for (int j = i + 1; j < degree; j++) {
+                    limit = Math.max(limit, weights[i] + weights[j]);
+                }
+                witnessSearch(neighbors[i], v, limit, neighbors, i + 1, degree, ws);
+                for (int j = i + 1; j < degree; j++) {
+                    double via = weights[i] + weights[j];
+                    if (ws.dist(neighbors[j]) > via) {
+                        needed++;
+                        if (out != null) {
+                            out.add(neighbors[i], neighbors[j], via);
+                        }
+                    }
+                }
+            }
+            return 2 * (needed - degree) + deletedNeighbors[v];
+        }
+
+        /* Bounded Dijkstra from SOURCE that avoids VIA and the vertices of this round that
+           come before it. Stops past LIMIT, once TARGETS[begin, end) are all settled, or
+           after a fixed settle budget. Distances are left in WS. */
+        private void witnessSearch(int source, int via, double limit, int[] targets,
+                                   int begin, int end, SearchWorkspace ws) {
+            ws.reset();
+            LazyDoubleHeap fringe = ws.lazyFringe();
+            ws.update(source, 0, -1);
+            fringe.push(source, 0);
+            for (int t = begin; t < end; t++) {
+                ws.mark(targets[t]);
+            }
+            int settled = 0;
+            int targetsLeft = end - begin;
+            while (fringe.size() != 0 && settled < WITNESS_SETTLE_LIMIT && targetsLeft > 0) {
+                double d = fringe.peekPriority();
+                int curr = fringe.poll();
+                if (ws.settled(curr)) {
+                    continue;
+                }
+                if (d > limit) {
+                    break;
+                }
+                ws.settle(curr);
+                settled++;
+                if (ws.marked(curr)) {
+                    targetsLeft--;
+                }
+                for (int k = 0; k < adjSize[curr]; k++) {
+                    int to = adjTo[curr][k];
+                    if (to == via || (contractingRound[to] == round && to < via)) {
+                        continue;
+                    }
+                    double nd = d + adjW[curr][k];
+                    if (nd < ws.dist(to)) {
+                        ws.update(to, nd, curr);
+                        fringe.push(to, nd);
+                    }
+                }
+            }
+        }
+
+        /* Removes edge FROM -> TO, moving FROM's last edge into its slot. */
+        private void removeEdge(int from, int to) {
+            for (int k = 0; k < adjSize[from]; k++) {
+                if (adjTo[from][k] == to) {
+                    int last = adjSize[from] - 1;
+                    adjTo[from][k] = adjTo[from][last];
+                    adjW[from][k] = adjW[from][last];
+                    adjMid[from][k] = adjMid[from][last];
+                    adjSize[from] = last;
+                    return;
+                }
+            }
+        }
+
+        /* Adds edge FROM -> TO, or lowers the weight of the existing one. */
+        private void addEdge(int from, int to, double weight, int mid) {
+            for (int k = 0; k < adjSize[from]; k++) {
+                if (adjTo[from][k] == to) {
+                    if (weight < adjW[from][k]) {
+                        adjW[from][k] = weight;
+                        adjMid[from][k] = mid;
+                    }
+                    return;
+                }
+            }
+            int size = adjSize[from];
+            if (size == adjTo[from].length) {
+                adjTo[from] = Arrays.copyOf(adjTo[from], 2 * size);
+                adjW[from] = Arrays.copyOf(adjW[from], 2 * size);
+                adjMid[from] = Arrays.copyOf(adjMid[from], 2 * size);
+            }
+            adjTo[from][size] = to;
+            adjW[from][size] = weight;
+            adjMid[from][size] = mid;
+            adjSize[from]++;
+        }
+    }
+
+    /* Growable list of (from, to, weight) shortcuts found for one contracted vertex. */
+    private static class ShortcutList {
+        private int[] from = new int[4];
+        private int[] to = new int[4];
+        private double[] weight = new double[4];
+        private int size;
+
+        void add(int u, int w, double d) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, 2 * size);
+                to = Arrays.copyOf(to, 2 * size);
+                weight = Arrays.copyOf(weight, 2 * size);
+            }
+            from[size] = u;
+            to[size] = w;
+            weight[size] = d;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.LazyDoubleHeap;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shortest path query on a ContractionHierarchy: a bidirectional Dijkstra in which both
+ * searches only follow upward edges. Each direction stops once its smallest key reaches
+ * the best meeting distance found so far. The path through the meeting vertex is then
+ * unpacked into original OSM node ids, so solution() looks exactly like AStarSolver's.
+ */
+public class ContractionHierarchySolver implements ShortestPathsSolver<Long> {
+
+    /* How many vertices to settle between timeout checks. */
+    private static final int TIMEOUT_CHECK_INTERVAL = 256;
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight = 0;
+    private int numStatesExplored;
+    private double explorationTime;
+
+    private final ContractionHierarchy ch;
+    private double best = Double.POSITIVE_INFINITY;
+    private int meeting = -1;
+
+    public ContractionHierarchySolver(ContractionHierarchy ch, long start, long end,
+                                      double timeout) {
+        this(ch, start, end, timeout, new SearchWorkspace(ch.graph().size()),
+                new SearchWorkspace(ch.graph().size()));
+    }
+
+    /**
+     * Solves using FORWARD and BACKWARD as the per-vertex state of the two searches. Both
+     * must hold at least as many vertices as the graph and must be distinct; they are
+     * reset here.
+     */
+    public ContractionHierarchySolver(ContractionHierarchy ch, long start, long end,
+                                      double timeout, SearchWorkspace forward, SearchWorkspace backward) {
+        Stopwatch tracker = new Stopwatch();
+        this.ch = ch;
+        int source = ch.graph().indexOf(start);
+        int target = ch.graph().indexOf(end);
+
+        forward.reset();
+        backward.reset();
+        LazyDoubleHeap forwardFringe = forward.lazyFringe();
+        LazyDoubleHeap backwardFringe = backward.lazyFringe();
+        forward.update(source, 0, -1);
+        backward.update(target, 0, -1);
+        forwardFringe.push(source, 0);
+        backwardFringe.push(target, 0);
+        if (source == target) {
+            best = 0;
+            meeting = source;
+        }
+
+        outcome = SolverOutcome.UNSOLVABLE;
+        while (true) {
+            discardSettled(forwardFringe, forward);
+            discardSettled(backwardFringe, backward);
+            double forwardTop = forwardFringe.size() == 0
+                    ? Double.POSITIVE_INFINITY : forwardFringe.peekPriority();
+            double backwardTop = backwardFringe.size() == 0
+                    ? Double.POSITIVE_INFINITY : backwardFringe.peekPriority();
+            if (Math.min(forwardTop, backwardTop) >= best) {
+                break;
+            }
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0
+                    && tracker.elapsedTime() >= timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                break;
+            }
+            if (forwardTop <= backwardTop) {
+                expand(forwardFringe, forward, backward);
+            } else {
+                expand(backwardFringe, backward, forward);
+            }
+            numStatesExplored++;
+        }
+
+        if (outcome != SolverOutcome.TIMEOUT && meeting != -1) {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            List<Integer> up = new ArrayList<>();
+            for (int v = meeting; v != -1; v = forward.parent(v)) {
+                up.add(v);
+            }
+            Collections.reverse(up);
+            solution.add(ch.graph().id(source));
+            for (int i = 0; i + 1 < up.size(); i++) {
+                ch.unpack(up.get(i), up.get(i + 1), solution);
+            }
+            for (int v = meeting; backward.parent(v) != -1; v = backward.parent(v)) {
+                ch.unpack(v, backward.parent(v), solution);
+            }
+        }
+        explorationTime = tracker.elapsedTime();
+    }
+
+    /* Pops entries off the top of FRINGE whose vertex WORKSPACE has already settled. */
+    private static void discardSettled(LazyDoubleHeap fringe, SearchWorkspace workspace) {
+        while (fringe.size() != 0 && workspace.settled(fringe.peek())) {
+            fringe.poll();
+        }
+    }
+
+    /* Settles the top vertex of FRINGE and relaxes its upward edges. */
+    private void expand(LazyDoubleHeap fringe, SearchWorkspace mine, SearchWorkspace other) {
+        int curr = fringe.poll();
+        mine.settle(curr);
+        double currDist = mine.dist(curr);
+        for (int e = ch.upBegin(curr); e < ch.upEnd(curr); e++) {
+            int to = ch.upTarget(e);
+            double newDistance = currDist + ch.upWeight(e);
+            if (newDistance < mine.dist(to)) {
+                mine.update(to, newDistance, curr);
+                fringe.push(to, newDistance);
+                double through = newDistance + other.dist(to);
+                if (through < best) {
+                    best = through;
+                    meeting = to;
+                }
+            }
+        }
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
@@ -0,0 +1,146 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.pq.IndexedDoubleHeap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest-path distances, and optionally paths, from every one of a set of source
+ * vertices to every one of a set of target vertices of a CompactStreetMapGraph.
+ *
+ * Instead of one search per (source, target) pair, each source gets a single one-to-many
+ * Dijkstra that stops as soon as every target is settled. The sweeps are independent, so
+ * they run in parallel on the common fork/join pool, each with its thread's pooled
+ * SearchWorkspace.
+ */
+public class DistanceMatrix {
+
+    private final long[] sources;
+    private final long[] targets;
+    private final double[][] distances;
+    private final List<Long>[][] paths;
+
+    /**
+     * Computes the matrix from the OSM ids SOURCES to the OSM ids TARGETS, which must all
+     * be vertices of GRAPH. Paths are kept only if WITHPATHS is true.
+     */
+    public DistanceMatrix(CompactStreetMapGraph graph, long[] sources, long[] targets,
+                         boolean withPaths) {
+        this.sources = sources.clone();
+        this.targets = targets.clone();
+        distances = new double[sources.length][targets.length];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Long>[][] pathTable = withPaths ? new List[sources.length][targets.length] : null;
+        paths = pathTable;
+
+        int[] targetIndex = new int[targets.length];
+        boolean[] isTarget = new boolean[graph.size()];
+        int distinctTargets = 0;
+        for (int j = 0; j < targets.length; j++) {
+            targetIndex[j] = graph.indexOf(targets[j]);
+            if (!isTarget[targetIndex[j]]) {
+                isTarget[targetIndex[j]] = true;
+                distinctTargets++;
+            }
+        }
+        int targetCount = distinctTargets;
+
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            SearchWorkspace workspace = SearchWorkspace.forCurrentThread(graph.size());
+            sweep(graph, graph.indexOf(sources[i]), isTarget, targetCount, workspace);
+            for (int j = 0; j < targets.length; j++) {
+                int t = targetIndex[j];
+                distances[i][j] = workspace.dist(t);
+                if (paths != null) {
+                    paths[i][j] = pathTo(graph, t, workspace);
+                }
+            }
+        });
+    }
+
+    /* Dijkstra from SOURCE that stops once TARGETCOUNT vertices marked in ISTARGET have been
+       settled, leaving distances and back-pointers in WORKSPACE. */
+    private static void sweep(CompactStreetMapGraph graph, int source, boolean[] isTarget,
+                              int targetCount, SearchWorkspace workspace) {
+        IndexedDoubleHeap fringe = workspace.fringe();
+        workspace.update(source, 0, -1);
+        fringe.insert(source, 0);
+        int targetsLeft = targetCount;
+        while (fringe.size() != 0 && targetsLeft > 0) {
+            double currDist = fringe.peekPriority();
+            int curr = fringe.poll();
+            if (isTarget[curr]) {
+                targetsLeft--;
+            }
+            for (int e = graph.edgesBegin(curr); e < graph.edgesEnd(curr); e++) {
+                int to = graph.target(e);
+                double newDistance = currDist + graph.weight(e);
+                if (newDistance < workspace.dist(to)) {
+                    workspace.update(to, newDistance, curr);
+                    if (fringe.contains(to)) {
+                        fringe.changePriority(to, newDistance);
+                    } else {
+                        fringe.insert(to, newDistance);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Returns the OSM ids on the path to TARGET recorded in WORKSPACE, or an empty list if
+       TARGET was not reached. */
+    private static List<Long> pathTo(CompactStreetMapGraph graph, int target,
+                                     SearchWorkspace workspace) {
+        List<Long> path = new ArrayList<>();
+        if (!workspace.visited(target)) {
+            return path;
+        }
+        for (int v = target; v != -1; v = workspace.parent(v)) {
+            path.add(graph.id(v));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public int numSources() {
+        return sources.length;
+    }
+
+    public int numTargets() {
+        return targets.length;
+    }
+
+    /** Returns the OSM id of source I. */
+    public long source(int i) {
+        return sources[i];
+    }
+
+    /** Returns the OSM id of target J. */
+    public long target(int j) {
+        return targets[j];
+    }
+
+    /** Returns the shortest distance from source I to target J, or infinity if there is none. */
+    public double distance(int i, int j) {
+        return distances[i][j];
+    }
+
+    /**
+     * Returns the OSM ids on the shortest path from source I to target J, or an empty list
+     * if there is none. Only available if the matrix was built with paths.
+     */
+    public List<Long> path(int i, int j) {
+        if (paths == null) {
+            throw new IllegalStateException("Distance matrix was built without paths.");
+        }
+        return paths[i][j];
+    }
+
+    public boolean hasPaths() {
+        return paths != null;
+    }
+}
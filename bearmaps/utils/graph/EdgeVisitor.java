@@ -0,0 +1,9 @@
+package bearmaps.utils.graph;
+
+/**
+ * Callback for visiting the outgoing edges of a vertex without materializing
+ * WeightedEdge objects or a list to hold them.
+ */
+public interface EdgeVisitor<Vertex> {
+    void visit(Vertex from, Vertex to, double weight);
+}
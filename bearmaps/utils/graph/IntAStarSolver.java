@@ -0,0 +1,277 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.pq.IndexedDoubleHeap;
+import bearmaps.utils.pq.LazyDoubleHeap;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* over the dense int vertices of a CompactStreetMapGraph. Same algorithm and results
+ * as AStarSolver, but distances and back-pointers live in double[]/int[] arrays indexed by
+ * vertex and the fringe is an IndexedDoubleHeap, so relaxing an edge never boxes or hashes.
+ * That state comes from a SearchWorkspace, which callers can pool across queries.
+ * Vertices passed in and returned from solution() are still OSM ids.
+ */
+public class IntAStarSolver implements ShortestPathsSolver<Long> {
+
+    /** How the fringe handles a vertex whose distance improves while it is queued. */
+    public enum Fringe {
+        /** Keep one entry per vertex in an indexed heap and lower its key in place. */
+        DECREASE_KEY,
+        /** Push a duplicate entry and skip stale ones on poll; no index is kept. */
+        LAZY_DELETION
+    }
+
+    /* How many vertices to settle between timeout checks. */
+    private static final int TIMEOUT_CHECK_INTERVAL = 256;
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight = 0;
+    private int numStatesExplored;
+    private double explorationTime;
+    private final IntHeuristic heuristic;
+
+    public IntAStarSolver(CompactStreetMapGraph input, long start, long end, double timeout) {
+        this(input, start, end, timeout, new SearchWorkspace(input.size()));
+    }
+
+    public IntAStarSolver(CompactStreetMapGraph input, long start, long end, double timeout,
+                          SearchWorkspace workspace) {
+        this(input, start, end, timeout, workspace, Fringe.DECREASE_KEY);
+    }
+
+    /**
+     * Solves using WORKSPACE for all per-vertex state instead of allocating it, keeping the
+     * fringe as described by MODE. WORKSPACE must hold at least input.size() vertices; it
+     * is reset here, and must not be shared with another search while this constructor runs.
+     */
+    public IntAStarSolver(CompactStreetMapGraph input, long start, long end, double timeout,
+                          SearchWorkspace workspace, Fringe mode) {
+        this(input, start, end, timeout, workspace, mode, input::estimatedDistance);
+    }
+
+    /**
+     * Like the constructor above, but guided by HEURISTIC instead of the great-circle
+     * distance. LAZY_DELETION is only exact if HEURISTIC is consistent.
+     */
+    public IntAStarSolver(CompactStreetMapGraph input, long start, long end, double timeout,
+                          SearchWorkspace workspace, Fringe mode, IntHeuristic heuristic) {
+        Stopwatch tracker = new Stopwatch();
+        this.heuristic = heuristic;
+        int source = input.indexOf(start);
+        int target = input.indexOf(end);
+
+        workspace.reset();
+        workspace.update(source, 0, -1);
+        if (mode == Fringe.LAZY_DELETION) {
+            searchLazy(input, source, target, timeout, workspace, tracker);
+        } else {
+            searchDecreaseKey(input, source, target, timeout, workspace, tracker);
+        }
+
+        if (outcome == SolverOutcome.SOLVED) {
+            solutionWeight = workspace.dist(target);
+            for (int v = target; v != -1; v = workspace.parent(v)) {
+                solution.add(input.id(v));
+            }
+            Collections.reverse(solution);
+        }
+        explorationTime = tracker.elapsedTime();
+    }
+
+    /**
+     * Multi-source, multi-target A*, for endpoints that lie part way along edges. The
+     * search starts from every SOURCES[i] at distance SOURCEOFFSETS[i] and finishes at
+     * whichever TARGETS[j] minimizes its distance plus TARGETOFFSETS[j]. The heuristic
+     * for vertex v is the smallest HEURISTIC.estimate(v, TARGETS[j]) + TARGETOFFSETS[j].
+     * solution() runs from the chosen source vertex to the chosen target vertex, and
+     * solutionWeight() includes both offsets.
+     */
+    public IntAStarSolver(CompactStreetMapGraph input, int[] sources, double[] sourceOffsets,
+                          int[] targets, double[] targetOffsets, double timeout,
+                          SearchWorkspace workspace, IntHeuristic heuristic) {
+        Stopwatch tracker = new Stopwatch();
+        this.heuristic = (v, ignored) -> {
+            double h = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < targets.length; j++) {
+                h = Math.min(h, heuristic.estimate(v, targets[j]) + targetOffsets[j]);
+            }
+            return h;
+        };
+
+        workspace.reset();
+        IndexedDoubleHeap fringe = workspace.fringe();
+        for (int i = 0; i < sources.length; i++) {
+            if (sourceOffsets[i] < workspace.dist(sources[i])) {
+                workspace.update(sources[i], sourceOffsets[i], -1);
+                double priority = sourceOffsets[i] + this.heuristic.estimate(sources[i], -1);
+                if (fringe.contains(sources[i])) {
+                    fringe.changePriority(sources[i], priority);
+                } else {
+                    fringe.insert(sources[i], priority);
+                }
+            }
+        }
+        int best = searchMulti(input, targets, targetOffsets, timeout, workspace, tracker);
+
+        if (outcome == SolverOutcome.SOLVED) {
+            solutionWeight = workspace.dist(targets[best]) + targetOffsets[best];
+            for (int v = targets[best]; v != -1; v = workspace.parent(v)) {
+                solution.add(input.id(v));
+            }
+            Collections.reverse(solution);
+        }
+        explorationTime = tracker.elapsedTime();
+    }
+
+    /* Decrease-key A* from the sources already in the fringe. Once the smallest key
+       reaches the best total through any settled target, that total is optimal; returns
+       the index in TARGETS of the target that achieves it. */
+    private int searchMulti(CompactStreetMapGraph input, int[] targets, double[] targetOffsets,
+                            double timeout, SearchWorkspace workspace, Stopwatch tracker) {
+        IndexedDoubleHeap fringe = workspace.fringe();
+        int best = -1;
+        double bestTotal = Double.POSITIVE_INFINITY;
+
+        outcome = SolverOutcome.UNSOLVABLE;
+        while (fringe.size() != 0 && fringe.peekPriority() < bestTotal) {
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0
+                    && tracker.elapsedTime() >= timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return best;
+            }
+
+            int curr = fringe.poll();
+            numStatesExplored++;
+            double currDist = workspace.dist(curr);
+            for (int j = 0; j < targets.length; j++) {
+                if (targets[j] == curr && currDist + targetOffsets[j] < bestTotal) {
+                    best = j;
+                    bestTotal = currDist + targetOffsets[j];
+                }
+            }
+
+            for (int e = input.edgesBegin(curr); e < input.edgesEnd(curr); e++) {
+                int to = input.target(e);
+                double newDistance = currDist + input.weight(e);
+                if (newDistance < workspace.dist(to)) {
+                    workspace.update(to, newDistance, curr);
+                    double priority = newDistance + heuristic.estimate(to, -1);
+                    if (fringe.contains(to)) {
+                        fringe.changePriority(to, priority);
+                    } else {
+                        fringe.insert(to, priority);
+                    }
+                }
+            }
+        }
+        if (best >= 0) {
+            outcome = SolverOutcome.SOLVED;
+        }
+        return best;
+    }
+
+    /* A* whose fringe holds each vertex at most once and lowers its key on relaxation. */
+    private void searchDecreaseKey(CompactStreetMapGraph input, int source, int target,
+                                   double timeout, SearchWorkspace workspace, Stopwatch tracker) {
+        IndexedDoubleHeap fringe = workspace.fringe();
+        fringe.insert(source, heuristic.estimate(source, target));
+
+        outcome = SolverOutcome.UNSOLVABLE;
+        while (fringe.size() != 0) {
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0
+                    && tracker.elapsedTime() >= timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+            if (fringe.peek() == target) {
+                outcome = SolverOutcome.SOLVED;
+                return;
+            }
+
+            int curr = fringe.poll();
+            numStatesExplored++;
+
+            double currDist = workspace.dist(curr);
+            for (int e = input.edgesBegin(curr); e < input.edgesEnd(curr); e++) {
+                int to = input.target(e);
+                double newDistance = currDist + input.weight(e);
+                if (newDistance < workspace.dist(to)) {
+                    workspace.update(to, newDistance, curr);
+                    double priority = newDistance + heuristic.estimate(to, target);
+                    if (fringe.contains(to)) {
+                        fringe.changePriority(to, priority);
+                    } else {
+                        fringe.insert(to, priority);
+                    }
+                }
+            }
+        }
+    }
+
+    /* A* that pushes a new fringe entry on every improvement and discards entries for
+       vertices that were already settled when they reach the top. Relies on the
+       heuristic being consistent, so a vertex is final once settled. */
+    private void searchLazy(CompactStreetMapGraph input, int source, int target,
+                            double timeout, SearchWorkspace workspace, Stopwatch tracker) {
+        LazyDoubleHeap fringe = workspace.lazyFringe();
+        fringe.push(source, heuristic.estimate(source, target));
+
+        outcome = SolverOutcome.UNSOLVABLE;
+        while (fringe.size() != 0) {
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0
+                    && tracker.elapsedTime() >= timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+            int curr = fringe.peek();
+            if (workspace.settled(curr)) {
+                fringe.poll();
+                continue;
+            }
+            if (curr == target) {
+                outcome = SolverOutcome.SOLVED;
+                return;
+            }
+
+            fringe.poll();
+            workspace.settle(curr);
+            numStatesExplored++;
+
+            double currDist = workspace.dist(curr);
+            for (int e = input.edgesBegin(curr); e < input.edgesEnd(curr); e++) {
+                int to = input.target(e);
+                double newDistance = currDist + input.weight(e);
+                if (newDistance < workspace.dist(to)) {
+                    workspace.update(to, newDistance, curr);
+                    fringe.push(to, newDistance + heuristic.estimate(to, target));
+                }
+            }
+        }
+    }
+
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    public List<Long> solution() {
+        return solution;
+    }
+
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
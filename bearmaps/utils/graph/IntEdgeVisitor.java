@@ -0,0 +1,8 @@
+package bearmaps.utils.graph;
+
+/**
+ * Primitive counterpart of EdgeVisitor for graphs whose vertices are dense int ids.
+ */
+public interface IntEdgeVisitor {
+    void visit(int from, int to, double weight);
+}
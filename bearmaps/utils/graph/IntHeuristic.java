@@ -0,0 +1,9 @@
+package bearmaps.utils.graph;
+
+/**
+ * Lower bound on the shortest-path distance between two dense int vertices, the int-id
+ * counterpart of AStarGraph.estimatedDistanceToGoal. Must never overestimate.
+ */
+public interface IntHeuristic {
+    double estimate(int v, int goal);
+}
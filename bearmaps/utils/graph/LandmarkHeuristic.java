@@ -0,0 +1,214 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.CompactStreetMapGraph;
+import bearmaps.utils.pq.IndexedDoubleHeap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ALT heuristic ("A*, landmarks, triangle inequality") over a CompactStreetMapGraph.
+ *
+ * A handful of landmark vertices are picked by farthest-point selection: each new landmark
+ * is the vertex whose road distance to the nearest landmark chosen so far is largest, so
+ * they end up spread around the edge of the map. All of them lie in the largest connected
+ * component, where nearly every route is. One Dijkstra per landmark stores d(L, v) for
+ * every vertex. Since the graph is symmetric, the triangle inequality gives
+ * d(v, goal) >= |d(L, goal) - d(L, v)| for every landmark L, and estimate() returns the
+ * largest of those bounds and the great-circle distance. Around obstacles the landmark
+ * bounds are much tighter than the great-circle one, so A* settles fewer vertices.
+ *
+ * Distances are kept as floats, vertex-major, so the bounds for one vertex sit next to
+ * each other in memory. Each bound is lowered by the worst-case float rounding error of
+ * the two stored distances, which keeps it admissible. That slack can make the heuristic
+ * very slightly inconsistent, so use it with a search that reopens vertices, such as
+ * IntAStarSolver with Fringe.DECREASE_KEY.
+ */
+public class LandmarkHeuristic implements IntHeuristic {
+
+    public static final int DEFAULT_LANDMARKS = 16;
+
+    /* Relative rounding error of a distance stored as a float, with some margin. */
+    private static final double FLOAT_ERROR = 1e-7;
+
+    private final CompactStreetMapGraph graph;
+    private final int[] landmarks;
+    private final float[] dist;
+    private final double buildSeconds;
+
+    public LandmarkHeuristic(CompactStreetMapGraph graph) {
+        this(graph, DEFAULT_LANDMARKS);
+    }
+
+    /** Picks COUNT landmarks (at most graph.size()) and precomputes their distances. */
+    public LandmarkHeuristic(CompactStreetMapGraph graph, int count) {
+        long start = System.nanoTime();
+        this.graph = graph;
+        int n = graph.size();
+        int k = Math.min(count, n);
+        landmarks = new int[k];
+        dist = new float[n * k];
+
+        SearchWorkspace ws = new SearchWorkspace(n);
+        double[] nearest = new double[n];
+        if (k > 0) {
+            // the first landmark is the vertex farthest from one in the largest component;
+            // vertices outside it stay at infinity in nearest, so farthest never picks them
+            dijkstra(largestComponentVertex(), ws);
+            landmarks[0] = farthest(ws, null);
+        }
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < k; i++) {
+            if (i > 0) {
+                landmarks[i] = farthest(null, nearest);
+            }
+            dijkstra(landmarks[i], ws);
+            for (int v = 0; v < n; v++) {
+                double d = ws.dist(v);
+                dist[v * k + i] = (float) d;
+                nearest[v] = Math.min(nearest[v], d);
+            }
+        }
+        buildSeconds = (System.nanoTime() - start) / 1e9;
+    }
+
+    /* Runs a full Dijkstra from SOURCE, leaving the distances in WS. */
+    private void dijkstra(int source, SearchWorkspace ws) {
+        ws.reset();
+        IndexedDoubleHeap fringe = ws.fringe();
+        ws.update(source, 0, -1);
+        fringe.insert(source, 0);
+        while (fringe.size() != 0) {
+            double currDist = fringe.peekPriority();
+            int curr = fringe.poll();
+            for (int e = graph.edgesBegin(curr); e < graph.edgesEnd(curr); e++) {
+                int to = graph.target(e);
+                double newDistance = currDist + graph.weight(e);
+                if (newDistance < ws.dist(to)) {
+                    ws.update(to, newDistance, curr);
+                    if (fringe.contains(to)) {
+                        fringe.changePriority(to, newDistance);
+                    } else {
+                        fringe.insert(to, newDistance);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Returns a vertex of the largest connected component. Named nodes with no roads, and
+       small islands of roads, are components of their own, and landmarks in them would
+       bound nothing on the main network. */
+    private int largestComponentVertex() {
+        int n = graph.size();
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int[] stack = new int[n];
+        int best = 0;
+        int bestSize = 0;
+        for (int s = 0; s < n; s++) {
+            if (component[s] != -1) {
+                continue;
+            }
+            component[s] = s;
+            stack[0] = s;
+            int top = 1;
+            int size = 0;
+            while (top > 0) {
+                int curr = stack[--top];
+                size++;
+                for (int e = graph.edgesBegin(curr); e < graph.edgesEnd(curr); e++) {
+                    int to = graph.target(e);
+                    if (component[to] == -1) {
+                        component[to] = s;
+                        stack[top++] = to;
+                    }
+                }
+            }
+            if (size > bestSize) {
+                best = s;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    /* Returns the vertex with the largest finite distance, read from WS if it is not null
+       and from DISTANCES otherwise. Landmarks themselves are at distance 0, so they are
+       never picked twice unless every vertex is a landmark. */
+    private int farthest(SearchWorkspace ws, double[] distances) {
+        int best = 0;
+        double bestDist = -1;
+        for (int v = 0; v < graph.size(); v++) {
+            double d = ws != null ? ws.dist(v) : distances[v];
+            if (d != Double.POSITIVE_INFINITY && d > bestDist) {
+                best = v;
+                bestDist = d;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public double estimate(int v, int goal) {
+        double best = graph.estimatedDistance(v, goal);
+        int k = landmarks.length;
+        int vBase = v * k;
+        int goalBase = goal * k;
+        for (int i = 0; i < k; i++) {
+            double fromV = dist[vBase + i];
+            double fromGoal = dist[goalBase + i];
+            // unreachable pairs give infinity or NaN, neither of which beats best
+            double bound = Math.abs(fromGoal - fromV) - FLOAT_ERROR * (fromGoal + fromV);
+            if (bound > best) {
+                best = bound;
+            }
+        }
+        return best;
+    }
+
+    public CompactStreetMapGraph graph() {
+        return graph;
+    }
+
+    /** Returns the dense ids of the landmarks, in the order they were picked. */
+    public int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /** Returns the wall-clock preprocessing time in seconds. */
+    public double buildSeconds() {
+        return buildSeconds;
+    }
+
+    /** Returns the heap retained by the distance table, in bytes. */
+    public long estimatedBytes() {
+        return 4L * dist.length + 4L * landmarks.length;
+    }
+
+    /**
+     * Returns graph() as an AStarGraph<Long> whose estimatedDistanceToGoal is this
+     * heuristic, so AStarSolver can use landmarks without changes.
+     */
+    public AStarGraph<Long> asAStarGraph() {
+        return new LandmarkGraph();
+    }
+
+    /* View of the compact graph that swaps in the landmark bound. */
+    private class LandmarkGraph implements AStarGraph<Long> {
+        @Override
+        public List<WeightedEdge<Long>> neighbors(Long v) {
+            return graph.neighbors(v);
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(Long s, Long goal) {
+            return estimate(graph.indexOf(s), graph.indexOf(goal));
+        }
+
+        @Override
+        public void forEachNeighbor(Long v, EdgeVisitor<Long> visitor) {
+            graph.forEachNeighbor(v, visitor);
+        }
+    }
+}
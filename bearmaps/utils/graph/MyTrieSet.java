@@ -83,20 +83,15 @@ public class MyTrieSet implements TrieSet61BL {
         if(!prefix.equals("")) {
             for (int i = 0; i < n; i++) {
                 char c = prefix.charAt(i);
-                if (curr.children.containsKey(c)) {
-                    curr = curr.children.get(c);
+                if (!curr.children.containsKey(c)) {
+                    return returned;
                 }
+                curr = curr.children.get(c);
             }
 
         }
-        for (Character ch : curr.children.keySet()) {
-            String s = Character.toString(ch);
-            String temp = prefix + s;
-            Node m = curr.children.get(ch);
-            keysHelper(temp, returned, m);
-        }
-
-        //iterate through prefix children and add to list
+        //collect the prefix itself if it is a key, then everything below it
+        keysHelper(prefix, returned, curr);
         return returned;
     }
 
@@ -111,8 +106,7 @@ public class MyTrieSet implements TrieSet61BL {
         for (Character ch : n.children.keySet()) {
             String s = Character.toString(ch);
             String temp = prefix + s;
-            n = n.children.get(ch);
-            keysHelper(temp, returned, n);
+            keysHelper(temp, returned, n.children.get(ch));
         }
 
 
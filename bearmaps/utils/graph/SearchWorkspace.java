@@ -0,0 +1,137 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IndexedDoubleHeap;
+import bearmaps.utils.pq.LazyDoubleHeap;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-vertex scratch state for the int-id solvers: tentative distances,
+ * back-pointers and the fringe heap, sized for graphs of up to capacity() vertices.
+ *
+ * Every entry carries the generation in which it was last written. reset() just bumps the
+ * generation, after which all entries read as unvisited, so starting a new search costs
+ * O(1) instead of refilling O(V) arrays. A workspace is not thread-safe; give each thread
+ * its own (see forCurrentThread).
+ */
+public class SearchWorkspace {
+
+    /* Pooled workspaces per thread, one per slot. */
+    private static final int SLOTS = 2;
+    private static final ThreadLocal<SearchWorkspace[]> POOL =
+            ThreadLocal.withInitial(() -> new SearchWorkspace[SLOTS]);
+
+    private final double[] dist;
+    private final int[] parent;
+    private final int[] stamp;
+    private final int[] settledStamp;
+    private final int[] markStamp;
+    private final IndexedDoubleHeap fringe;
+    private final LazyDoubleHeap lazyFringe;
+    private int generation;
+
+    public SearchWorkspace(int capacity) {
+        dist = new double[capacity];
+        parent = new int[capacity];
+        stamp = new int[capacity];
+        settledStamp = new int[capacity];
+        markStamp = new int[capacity];
+        fringe = new IndexedDoubleHeap(capacity);
+        lazyFringe = new LazyDoubleHeap(capacity);
+        generation = 1;
+    }
+
+    /**
+     * Returns this thread's pooled workspace, replacing it if it is too small for a graph
+     * of SIZE vertices. The workspace is reset before it is returned.
+     */
+    public static SearchWorkspace forCurrentThread(int size) {
+        return forCurrentThread(size, 0);
+    }
+
+    /**
+     * Like forCurrentThread(size), but returns the pooled workspace in SLOT (0 or 1), so
+     * a search that needs two workspaces at once, such as a bidirectional one, can borrow
+     * both without them aliasing.
+     */
+    public static SearchWorkspace forCurrentThread(int size, int slot) {
+        SearchWorkspace[] pool = POOL.get();
+        SearchWorkspace ws = pool[slot];
+        if (ws == null || ws.capacity() < size) {
+            ws = new SearchWorkspace(size);
+            pool[slot] = ws;
+        }
+        ws.reset();
+        return ws;
+    }
+
+    /** Forgets every distance and back-pointer and empties the fringe. */
+    public void reset() {
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            // stamps would wrap around into old generations; pay the O(V) clear once
+            Arrays.fill(stamp, 0);
+            Arrays.fill(settledStamp, 0);
+            Arrays.fill(markStamp, 0);
+            generation = 1;
+        }
+        fringe.clear();
+        lazyFringe.clear();
+    }
+
+    public int capacity() {
+        return dist.length;
+    }
+
+    /** Returns true if V has been given a distance since the last reset. */
+    public boolean visited(int v) {
+        return stamp[v] == generation;
+    }
+
+    /** Returns the tentative distance to V, or infinity if V has not been reached. */
+    public double dist(int v) {
+        return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the vertex V was reached from, or -1 if it is a source or unreached. */
+    public int parent(int v) {
+        return stamp[v] == generation ? parent[v] : -1;
+    }
+
+    /** Records that V is reachable at distance D via FROM. */
+    public void update(int v, double d, int from) {
+        dist[v] = d;
+        parent[v] = from;
+        stamp[v] = generation;
+    }
+
+    /** Marks V as settled: its distance is final for this search. */
+    public void settle(int v) {
+        settledStamp[v] = generation;
+    }
+
+    /** Returns true if V has been settled since the last reset. */
+    public boolean settled(int v) {
+        return settledStamp[v] == generation;
+    }
+
+    /** Marks V, e.g. as one of the targets of this search. */
+    public void mark(int v) {
+        markStamp[v] = generation;
+    }
+
+    /** Returns true if V has been marked since the last reset. */
+    public boolean marked(int v) {
+        return markStamp[v] == generation;
+    }
+
+    /** Returns the indexed fringe, for searches that decrease keys in place. */
+    public IndexedDoubleHeap fringe() {
+        return fringe;
+    }
+
+    /** Returns the index-free fringe, for searches that use lazy deletion. */
+    public LazyDoubleHeap lazyFringe() {
+        return lazyFringe;
+    }
+}
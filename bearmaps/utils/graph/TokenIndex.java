@@ -0,0 +1,260 @@
+package bearmaps.utils.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * An inverted index from the words of location names to the locations using them, so a
+ * query can match any words of a name in any order, e.g. "telegraph pizza" for
+ * "Pizza on Telegraph".
+ *
+ * Document d is the d-th name given to the constructor; its tokens are its runs of
+ * non-space characters. Each token's posting list, the sorted ids of the documents
+ * containing it, is stored as gaps between consecutive ids in variable-length bytes
+ * (seven bits per byte, high bit set on all but the last), and all lists are packed into
+ * one byte array, CSR style. Every SKIP_INTERVAL postings a skip entry records the id
+ * just before the block and the block's byte offset, so an intersection can jump over
+ * whole blocks instead of decoding them.
+ *
+ * The index is immutable once built, and building tokenizes and encodes in parallel.
+ */
+public class TokenIndex {
+
+    /* Postings per block between skip entries. */
+    private static final int SKIP_INTERVAL = 64;
+
+    private final Map<String, Integer> terms;
+    private final int documents;
+
+    /* Term t has count[t] postings in bytes[start[t], start[t + 1]) and skip entries
+       skipStart[t] to skipStart[t + 1] - 1; skip entry k of t covers block k + 1. */
+    private final int[] count;
+    private final int[] start;
+    private final byte[] bytes;
+    private final int[] skipStart;
+    private final int[] skipDoc;
+    private final int[] skipOffset;
+
+    /** Builds the index over NAMES, which should already be cleaned. */
+    public TokenIndex(List<String> names) {
+        documents = names.size();
+        String[][] tokens = new String[documents][];
+        IntStream.range(0, documents).parallel().forEach(d -> tokens[d] = tokenize(names.get(d)));
+
+        // terms are numbered in order of first use, so the build is deterministic
+        terms = new HashMap<>();
+        int[] termOf = new int[Arrays.stream(tokens).mapToInt(t -> t.length).sum()];
+        int postings = 0;
+        for (String[] doc : tokens) {
+            for (String token : doc) {
+                termOf[postings++] = terms.computeIfAbsent(token, t -> terms.size());
+            }
+        }
+        int n = terms.size();
+
+        // documents per term, CSR style; filling in document order keeps each list sorted
+        int[] docStart = new int[n + 1];
+        for (int i = 0; i < postings; i++) {
+            docStart[termOf[i] + 1]++;
+        }
+        for (int t = 0; t < n; t++) {
+            docStart[t + 1] += docStart[t];
+        }
+        int[] docs = new int[postings];
+        int[] fill = new int[n];
+        for (int d = 0, i = 0; d < documents; d++) {
+            for (int k = 0; k < tokens[d].length; k++, i++) {
+                int t = termOf[i];
+                docs[docStart[t] + fill[t]++] = d;
+            }
+        }
+
+        count = new int[n];
+        start = new int[n + 1];
+        skipStart = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(t -> {
+            count[t] = docStart[t + 1] - docStart[t];
+            start[t + 1] = encodedSize(docs, docStart[t], docStart[t + 1]);
+            skipStart[t + 1] = (count[t] - 1) / SKIP_INTERVAL;
+        });
+        for (int t = 0; t < n; t++) {
+            start[t + 1] += start[t];
+            skipStart[t + 1] += skipStart[t];
+        }
+        bytes = new byte[start[n]];
+        skipDoc = new int[skipStart[n]];
+        skipOffset = new int[skipStart[n]];
+        IntStream.range(0, n).parallel().forEach(t -> encode(t, docs, docStart[t]));
+    }
+
+    /* Returns the distinct tokens of NAME. */
+    private static String[] tokenize(String name) {
+        return Arrays.stream(name.split(" ")).filter(s -> !s.isEmpty()).distinct()
+                .toArray(String[]::new);
+    }
+
+    private static int encodedSize(int[] docs, int from, int to) {
+        int size = 0;
+        int prev = -1;
+        for (int i = from; i < to; i++) {
+            size += varintSize(docs[i] - prev);
+            prev = docs[i];
+        }
+        return size;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /* Writes the postings of term T, docs[from, from + count[t]), and its skip entries. */
+    private void encode(int t, int[] docs, int from) {
+        int pos = start[t];
+        int prev = -1;
+        for (int i = 0; i < count[t]; i++) {
+            if (i > 0 && i % SKIP_INTERVAL == 0) {
+                int k = skipStart[t] + i / SKIP_INTERVAL - 1;
+                skipDoc[k] = prev;
+                skipOffset[k] = pos;
+            }
+            int gap = docs[from + i] - prev;
+            while ((gap & ~0x7F) != 0) {
+                bytes[pos++] = (byte) (gap | 0x80);
+                gap >>>= 7;
+            }
+            bytes[pos++] = (byte) gap;
+            prev = docs[from + i];
+        }
+    }
+
+    /** Returns the number of documents, i.e. names given to the constructor. */
+    public int size() {
+        return documents;
+    }
+
+    /** Returns the number of distinct tokens. */
+    public int termCount() {
+        return terms.size();
+    }
+
+    /** Returns how many documents contain TOKEN. */
+    public int frequency(String token) {
+        Integer t = terms.get(token);
+        return t == null ? 0 : count[t];
+    }
+
+    /** Returns the bytes taken by the posting lists and their offsets and skip entries. */
+    public long estimatedBytes() {
+        return bytes.length + 4L * (count.length + start.length + skipStart.length
+                + skipDoc.length + skipOffset.length);
+    }
+
+    /**
+     * Returns the ids, in increasing order, of at most LIMIT documents containing every
+     * token of QUERY, or of all of them if LIMIT is not positive. A query without tokens
+     * matches nothing.
+     *
+     * The lists are intersected leapfrog style, rarest first: each list is advanced to the
+     * largest id seen so far until all agree, using the skip entries to pass over blocks
+     * that end below it.
+     */
+    public int[] search(String query, int limit) {
+        String[] tokens = tokenize(query);
+        if (tokens.length == 0) {
+            return new int[0];
+        }
+        Cursor[] cursors = new Cursor[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            Integer t = terms.get(tokens[i]);
+            if (t == null) {
+                return new int[0];
+            }
+            cursors[i] = new Cursor(t);
+        }
+        Arrays.sort(cursors, (a, b) -> Integer.compare(count[a.term], count[b.term]));
+
+        int capacity = limit > 0 ? Math.min(limit, count[cursors[0].term])
+                : count[cursors[0].term];
+        int[] found = new int[capacity];
+        int n = 0;
+        int candidate = cursors[0].next();
+        while (candidate != Integer.MAX_VALUE && n < capacity) {
+            int agreed = 1;
+            for (int i = 1; i < cursors.length && agreed == i; i++) {
+                int doc = cursors[i].advance(candidate);
+                if (doc == candidate) {
+                    agreed++;
+                } else {
+                    candidate = doc == Integer.MAX_VALUE ? doc : cursors[0].advance(doc);
+                }
+            }
+            if (agreed == cursors.length) {
+                found[n++] = candidate;
+                candidate = cursors[0].next();
+            }
+        }
+        return n == capacity ? found : Arrays.copyOf(found, n);
+    }
+
+    /* Reads one posting list in order. doc is the last id returned, or -1 at the start;
+       Integer.MAX_VALUE means the list is exhausted. */
+    private class Cursor {
+        private final int term;
+        private int pos;
+        private int index;
+        private int doc = -1;
+
+        Cursor(int term) {
+            this.term = term;
+            pos = start[term];
+        }
+
+        /* Returns the next id in the list. */
+        int next() {
+            if (index == count[term]) {
+                doc = Integer.MAX_VALUE;
+                return doc;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            index++;
+            doc += gap;
+            return doc;
+        }
+
+        /* Returns the first id in the list that is at least TARGET, moving past it. */
+        int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+            // skip entry k lets the cursor resume at posting (k + 1) * SKIP_INTERVAL
+            int k = skipStart[term] + index / SKIP_INTERVAL;
+            int jumped = -1;
+            while (k < skipStart[term + 1] && skipDoc[k] < target) {
+                jumped = k++;
+            }
+            if (jumped >= 0) {
+                index = (jumped - skipStart[term] + 1) * SKIP_INTERVAL;
+                pos = skipOffset[jumped];
+                doc = skipDoc[jumped];
+            }
+            while (doc < target) {
+                next();
+            }
+            return doc;
+        }
+    }
+}
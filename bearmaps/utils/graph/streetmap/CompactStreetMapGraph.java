@@ -0,0 +1,192 @@
+package bearmaps.utils.graph.streetmap;
+
+import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.IntEdgeVisitor;
+import bearmaps.utils.graph.WeightedEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only compressed-sparse-row (CSR) copy of a StreetMapGraph, built once after parsing.
+ *
+ * Vertices are renumbered to dense ints in [0, size()) in increasing OSM id order, so the
+ * OSM id of vertex i is ids[i] and ids can be searched with a binary search instead of a
+ * HashMap. The outgoing edges of vertex i occupy positions offsets[i] (inclusive) through
+ * offsets[i + 1] (exclusive) of the parallel targets/weights/edgeNames arrays. Nothing here
+ * is boxed, so the whole graph is a handful of flat arrays.
+ *
+ * Still implements AStarGraph<Long> so it can be handed to AStarSolver unchanged.
+ */
+public class CompactStreetMapGraph implements AStarGraph<Long> {
+
+    /* OSM id of each dense vertex, sorted ascending. */
+    private final long[] ids;
+    private final double[] lats;
+    private final double[] lons;
+
+    /* CSR adjacency: offsets has size() + 1 entries. */
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] weights;
+
+    /* Way name of each edge, as an index into names (-1 if unnamed). */
+    private final int[] edgeNames;
+    private final String[] names;
+
+    public CompactStreetMapGraph(StreetMapGraph g) {
+        Map<Long, Node> nodes = g.nodeMap();
+        Map<Long, Set<WeightedEdge<Long>>> adjacency = g.edgeMap();
+
+        int n = nodes.size();
+        ids = new long[n];
+        int i = 0;
+        for (long id : nodes.keySet()) {
+            ids[i] = id;
+            i++;
+        }
+        Arrays.sort(ids);
+
+        lats = new double[n];
+        lons = new double[n];
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            Node node = nodes.get(ids[v]);
+            lats[v] = node.lat();
+            lons[v] = node.lon();
+            offsets[v + 1] = offsets[v] + adjacency.get(ids[v]).size();
+        }
+
+        int m = offsets[n];
+        targets = new int[m];
+        weights = new float[m];
+        edgeNames = new int[m];
+
+        Map<String, Integer> nameIndex = new HashMap<>();
+        List<String> nameList = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            int e = offsets[v];
+            for (WeightedEdge<Long> edge : adjacency.get(ids[v])) {
+                targets[e] = indexOf(edge.to());
+                weights[e] = (float) edge.weight();
+                String name = edge.getName();
+                if (name == null) {
+                    edgeNames[e] = -1;
+                } else {
+                    Integer idx = nameIndex.get(name);
+                    if (idx == null) {
+                        idx = nameList.size();
+                        nameIndex.put(name, idx);
+                        nameList.add(name);
+                    }
+                    edgeNames[e] = idx;
+                }
+                e++;
+            }
+        }
+        names = nameList.toArray(new String[0]);
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of directed edges. */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /** Returns the dense index of the vertex with OSM id ID, or -1 if there is none. */
+    public int indexOf(long id) {
+        int idx = Arrays.binarySearch(ids, id);
+        return idx < 0 ? -1 : idx;
+    }
+
+    /** Returns the OSM id of dense vertex V. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    /*
+     * Edge cursor. The outgoing edges of V are the edge indices e with
+     * edgesBegin(v) <= e < edgesEnd(v); target(e) and weight(e) read them. This is the
+     * allocation-free way to walk the graph from a search loop.
+     */
+
+    public int edgesBegin(int v) {
+        return offsets[v];
+    }
+
+    public int edgesEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    public int target(int e) {
+        return targets[e];
+    }
+
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /** Calls VISITOR once for every outgoing edge of dense vertex V. */
+    public void forEachNeighbor(int v, IntEdgeVisitor visitor) {
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            visitor.visit(v, targets[e], weights[e]);
+        }
+    }
+
+    /** Returns the great-circle distance between dense vertices S and GOAL. */
+    public double estimatedDistance(int s, int goal) {
+        return StreetMapGraph.distance(lons[s], lons[goal], lats[s], lats[goal]);
+    }
+
+    /**
+     * Returns a list of outgoing edges for V. Assumes V exists in this graph.
+     * Allocates a fresh list and edges on every call.
+     */
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int from = indexOf(v);
+        List<WeightedEdge<Long>> incident = new ArrayList<>(offsets[from + 1] - offsets[from]);
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[targets[e]], weights[e]);
+            edge.setName(edgeNames[e] < 0 ? null : names[edgeNames[e]]);
+            incident.add(edge);
+        }
+        return incident;
+    }
+
+    /**
+     * Returns the great-circle distance between S and GOAL. Assumes
+     * S and GOAL exist in this graph.
+     */
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistance(indexOf(s), indexOf(goal));
+    }
+
+    /**
+     * Returns a rough estimate, in bytes, of the heap retained by this graph's arrays.
+     * Ignores the shared way-name strings.
+     */
+    public long estimatedBytes() {
+        long bytes = 8L * ids.length + 8L * lats.length + 8L * lons.length;
+        bytes += 4L * offsets.length + 4L * targets.length + 4L * weights.length;
+        bytes += 4L * edgeNames.length + 8L * names.length;
+        return bytes;
+    }
+}
@@ -0,0 +1,303 @@
+package bearmaps.utils.graph.streetmap;
+
+import bearmaps.utils.ps.Projection;
+
+/**
+ * Uniform-grid spatial index over the road segments of a CompactStreetMapGraph, for
+ * snapping a location onto the nearest point of the nearest road rather than onto the
+ * nearest intersection.
+ *
+ * Each undirected edge is one straight segment between its endpoints. Coordinates are
+ * projected with the Projection around the map's mean latitude. The bounding box is cut
+ * into square cells about one average segment long, and every segment is listed in each
+ * cell its bounding box touches. The lists are packed into two flat
+ * arrays, CSR style. A query scans rings of cells outward from its own cell and stops
+ * once the next ring cannot hold anything closer than the best segment so far.
+ */
+public class EdgeIndex {
+
+    /* The grid never has more than this many cells per segment. */
+    private static final int MAX_CELLS_PER_SEGMENT = 4;
+
+    /* Segment i joins dense vertices segFrom[i] < segTo[i] with weight segWeight[i]. */
+    private final int[] segFrom;
+    private final int[] segTo;
+    private final float[] segWeight;
+
+    /* Projected endpoint coordinates of every vertex. */
+    private final double[] xs;
+    private final double[] ys;
+    private final Projection projection;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    /* The segments in cell c are cellSegments[cellStart[c], cellStart[c + 1]). */
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    public EdgeIndex(CompactStreetMapGraph graph) {
+        int n = graph.size();
+        double meanLat = 0;
+        for (int v = 0; v < n; v++) {
+            meanLat += graph.lat(v) / n;
+        }
+        projection = new Projection(meanLat);
+        xs = new double[n];
+        ys = new double[n];
+        for (int v = 0; v < n; v++) {
+            xs[v] = projection.x(graph.lon(v));
+            ys[v] = projection.y(graph.lat(v));
+        }
+
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.edgesBegin(v); e < graph.edgesEnd(v); e++) {
+                if (v < graph.target(e)) {
+                    count++;
+                }
+            }
+        }
+        segFrom = new int[count];
+        segTo = new int[count];
+        segWeight = new float[count];
+        double totalLength = 0;
+        double loX = Double.POSITIVE_INFINITY;
+        double loY = Double.POSITIVE_INFINITY;
+        double hiX = Double.NEGATIVE_INFINITY;
+        double hiY = Double.NEGATIVE_INFINITY;
+        int s = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.edgesBegin(v); e < graph.edgesEnd(v); e++) {
+                int to = graph.target(e);
+                if (v < to) {
+                    segFrom[s] = v;
+                    segTo[s] = to;
+                    segWeight[s] = (float) graph.weight(e);
+                    totalLength += Math.hypot(xs[to] - xs[v], ys[to] - ys[v]);
+                    loX = Math.min(loX, Math.min(xs[v], xs[to]));
+                    hiX = Math.max(hiX, Math.max(xs[v], xs[to]));
+                    loY = Math.min(loY, Math.min(ys[v], ys[to]));
+                    hiY = Math.max(hiY, Math.max(ys[v], ys[to]));
+                    s++;
+                }
+            }
+        }
+
+        if (count == 0) {
+            minX = 0;
+            minY = 0;
+            cellSize = 1;
+            cols = 1;
+            rows = 1;
+        } else {
+            minX = loX;
+            minY = loY;
+            double area = Math.max(hiX - loX, 1e-9) * Math.max(hiY - loY, 1e-9);
+            double size = Math.max(totalLength / count,
+                    Math.sqrt(area / ((double) MAX_CELLS_PER_SEGMENT * count)));
+            cellSize = Math.max(size, 1e-9);
+            cols = (int) ((hiX - loX) / cellSize) + 1;
+            rows = (int) ((hiY - loY) / cellSize) + 1;
+        }
+
+        // two passes over the segments: count per cell, then fill
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < count; i++) {
+            forEachCell(i, c -> cellStart[c + 1]++);
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellSegments = new int[cellStart[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for (int i = 0; i < count; i++) {
+            int segment = i;
+            forEachCell(i, c -> {
+                cellSegments[cellStart[c] + fill[c]] = segment;
+                fill[c]++;
+            });
+        }
+    }
+
+    private interface CellVisitor {
+        void visit(int cell);
+    }
+
+    /* Calls VISITOR for every cell touched by the bounding box of SEGMENT. */
+    private void forEachCell(int segment, CellVisitor visitor) {
+        int a = segFrom[segment];
+        int b = segTo[segment];
+        int x0 = column(Math.min(xs[a], xs[b]));
+        int x1 = column(Math.max(xs[a], xs[b]));
+        int y0 = row(Math.min(ys[a], ys[b]));
+        int y1 = row(Math.max(ys[a], ys[b]));
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                visitor.visit(y * cols + x);
+            }
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(Math.max((int) Math.floor((x - minX) / cellSize), 0), cols - 1);
+    }
+
+    private int row(double y) {
+        return Math.min(Math.max((int) Math.floor((y - minY) / cellSize), 0), rows - 1);
+    }
+
+    /** Returns the number of indexed road segments. */
+    public int segmentCount() {
+        return segFrom.length;
+    }
+
+    /** Returns the side of a grid cell in miles. */
+    public double cellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the point on the road network closest to LON and LAT, or null if the graph
+     * has no edges.
+     */
+    public EdgeSnap nearest(double lon, double lat) {
+        if (segFrom.length == 0) {
+            return null;
+        }
+        double qx = projection.x(lon);
+        double qy = projection.y(lat);
+        // rings are centered on the grid cell nearest the query, and everything in the grid
+        // is at least as far from the query as from that cell's clamped point
+        int cx = column(qx);
+        int cy = row(qy);
+        double offX = qx - Math.min(Math.max(qx, minX), minX + cols * cellSize);
+        double offY = qy - Math.min(Math.max(qy, minY), minY + rows * cellSize);
+        double outside = offX * offX + offY * offY;
+        int lastRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        double bestT = 0;
+        for (int r = 0; r <= lastRing; r++) {
+            // every cell in ring r or beyond is at least (r - 1) cells from the query
+            double reach = Math.max(r - 1, 0) * cellSize;
+            if (best >= 0 && bestDist * bestDist <= outside + reach * reach) {
+                break;
+            }
+            for (int y = Math.max(cy - r, 0); y <= Math.min(cy + r, rows - 1); y++) {
+                boolean edgeRow = y == cy - r || y == cy + r;
+                // whole top and bottom rows, only the two end cells of the others
+                int step = edgeRow ? 1 : 2 * r;
+                int first = edgeRow ? Math.max(cx - r, 0) : (cx - r >= 0 ? cx - r : cx + r);
+                for (int x = first; x <= Math.min(cx + r, cols - 1); x += step) {
+                    int c = y * cols + x;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int segment = cellSegments[k];
+                        double t = projection(segment, qx, qy);
+                        double d = distance(segment, t, qx, qy);
+                        if (d < bestDist) {
+                            best = segment;
+                            bestDist = d;
+                            bestT = t;
+                        }
+                    }
+                }
+            }
+        }
+
+        int a = segFrom[best];
+        int b = segTo[best];
+        double px = xs[a] + bestT * (xs[b] - xs[a]);
+        double py = ys[a] + bestT * (ys[b] - ys[a]);
+        return new EdgeSnap(a, b, bestT, segWeight[best], bestDist,
+                projection.lon(px), projection.lat(py));
+    }
+
+    /* Returns how far along SEGMENT, from 0 at its from vertex to 1 at its to vertex, the
+       point closest to (QX, QY) lies. */
+    private double projection(int segment, double qx, double qy) {
+        int a = segFrom[segment];
+        int b = segTo[segment];
+        double dx = xs[b] - xs[a];
+        double dy = ys[b] - ys[a];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        double t = ((qx - xs[a]) * dx + (qy - ys[a]) * dy) / lengthSquared;
+        return Math.min(Math.max(t, 0), 1);
+    }
+
+    /* Returns the distance from (QX, QY) to the point at fraction T along SEGMENT. */
+    private double distance(int segment, double t, double qx, double qy) {
+        int a = segFrom[segment];
+        int b = segTo[segment];
+        double px = xs[a] + t * (xs[b] - xs[a]);
+        double py = ys[a] + t * (ys[b] - ys[a]);
+        return Math.hypot(qx - px, qy - py);
+    }
+
+    /**
+     * A location snapped onto a road: the point at fraction() of the way along the edge
+     * from dense vertex from() to dense vertex to(). Reaching it from from() costs
+     * fraction() * weight() and from to() costs (1 - fraction()) * weight().
+     */
+    public static class EdgeSnap {
+        private final int from;
+        private final int to;
+        private final double fraction;
+        private final double weight;
+        private final double distance;
+        private final double lon;
+        private final double lat;
+
+        EdgeSnap(int from, int to, double fraction, double weight, double distance,
+                 double lon, double lat) {
+            this.from = from;
+            this.to = to;
+            this.fraction = fraction;
+            this.weight = weight;
+            this.distance = distance;
+            this.lon = lon;
+            this.lat = lat;
+        }
+
+        public int from() {
+            return from;
+        }
+
+        public int to() {
+            return to;
+        }
+
+        public double fraction() {
+            return fraction;
+        }
+
+        public double weight() {
+            return weight;
+        }
+
+        /** Returns the distance in miles from the query location to the snapped point. */
+        public double distance() {
+            return distance;
+        }
+
+        public double lon() {
+            return lon;
+        }
+
+        public double lat() {
+            return lat;
+        }
+
+        /** Returns true if this and OTHER lie on the same undirected edge. */
+        public boolean sameEdge(EdgeSnap other) {
+            return from == other.from && to == other.to;
+        }
+    }
+}
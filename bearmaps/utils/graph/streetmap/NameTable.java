@@ -0,0 +1,181 @@
+package bearmaps.utils.graph.streetmap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only table of the named nodes of a map and their cleaned names, built once after
+ * parsing so no name is cleaned more than once.
+ *
+ * Row r is the r-th named node in the order given, with OSM id ids[r]. Its cleaned name
+ * is names[nameOf[r]]: equal cleaned names share one String, and names is sorted so a
+ * name is looked up by binary search rather than through a HashMap. The rows carrying
+ * cleaned name k occupy positions rowStart[k] (inclusive) through rowStart[k + 1]
+ * (exclusive) of rows, in increasing order, CSR style, so looking up the locations of a
+ * name needs no list per name.
+ */
+public class NameTable {
+
+    private final Node[] nodes;
+    private final long[] ids;
+    private final int[] nameOf;
+    private final String[] names;
+
+    /* CSR lists of rows per cleaned name: rowStart has nameCount() + 1 entries. */
+    private final int[] rowStart;
+    private final int[] rows;
+
+    /** Builds the table over the nodes of NODES that have a name, keeping their order. */
+    public NameTable(List<Node> nodes) {
+        List<Node> named = new ArrayList<>();
+        for (Node n : nodes) {
+            if (n.name() != null) {
+                named.add(n);
+            }
+        }
+        int n = named.size();
+        this.nodes = named.toArray(new Node[0]);
+        ids = new long[n];
+        nameOf = new int[n];
+        // number the distinct names in order of first use, then renumber them sorted
+        Map<String, Integer> firstUse = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        for (int r = 0; r < n; r++) {
+            ids[r] = this.nodes[r].id();
+            String cleaned = clean(this.nodes[r].name());
+            Integer k = firstUse.putIfAbsent(cleaned, distinct.size());
+            if (k == null) {
+                k = distinct.size();
+                distinct.add(cleaned);
+            }
+            nameOf[r] = k;
+        }
+        names = distinct.toArray(new String[0]);
+        Arrays.sort(names);
+        int[] rank = new int[names.length];
+        for (int k = 0; k < names.length; k++) {
+            rank[firstUse.get(names[k])] = k;
+        }
+        for (int r = 0; r < n; r++) {
+            nameOf[r] = rank[nameOf[r]];
+        }
+
+        rowStart = new int[names.length + 1];
+        for (int r = 0; r < n; r++) {
+            rowStart[nameOf[r] + 1]++;
+        }
+        for (int k = 0; k < names.length; k++) {
+            rowStart[k + 1] += rowStart[k];
+        }
+        rows = new int[n];
+        int[] fill = new int[names.length];
+        for (int r = 0; r < n; r++) {
+            int k = nameOf[r];
+            rows[rowStart[k] + fill[k]++] = r;
+        }
+    }
+
+    /**
+     * Returns S with everything but ASCII letters and spaces removed and the letters in
+     * lower case, the same as s.replaceAll("[^a-zA-Z ]", "").toLowerCase() in an English
+     * locale. One pass over the characters, and S itself if it is already clean.
+     */
+    public static String clean(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c == ' ')) {
+                break;
+            }
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+        char[] out = new char[length];
+        s.getChars(0, i, out, 0);
+        int n = i;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z' || c == ' ') {
+                out[n++] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                out[n++] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return new String(out, 0, n);
+    }
+
+    /** Returns the number of rows, i.e. named nodes. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of distinct cleaned names. */
+    public int nameCount() {
+        return names.length;
+    }
+
+    public Node node(int r) {
+        return nodes[r];
+    }
+
+    public long id(int r) {
+        return ids[r];
+    }
+
+    /** Returns the cleaned name number of row R. */
+    public int nameOf(int r) {
+        return nameOf[r];
+    }
+
+    /** Returns cleaned name number K; the numbers follow the names' sorted order. */
+    public String name(int k) {
+        return names[k];
+    }
+
+    /** Returns the number of CLEANED, or -1 if no node has that cleaned name. */
+    public int nameId(String cleaned) {
+        int k = Arrays.binarySearch(names, cleaned);
+        return k >= 0 ? k : -1;
+    }
+
+    /** Rows with cleaned name K are row(i) for i in [rowsBegin(k), rowsEnd(k)). */
+    public int rowsBegin(int k) {
+        return rowStart[k];
+    }
+
+    public int rowsEnd(int k) {
+        return rowStart[k + 1];
+    }
+
+    public int row(int i) {
+        return rows[i];
+    }
+
+    /** Returns a read-only view of the cleaned name of every row, in row order. */
+    public List<String> cleanNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int r) {
+                return names[nameOf[r]];
+            }
+
+            @Override
+            public int size() {
+                return nameOf.length;
+            }
+        };
+    }
+
+    /** Returns the bytes taken by the arrays, not counting the nodes and strings. */
+    public long estimatedBytes() {
+        return 8L * ids.length + 4L * (nodes.length + nameOf.length + names.length
+                + rowStart.length + rows.length);
+    }
+}
@@ -1,6 +1,7 @@
 package bearmaps.utils.graph.streetmap;
 
 import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.EdgeVisitor;
 import bearmaps.utils.graph.WeightedEdge;
 import org.xml.sax.SAXException;
 
@@ -40,6 +41,17 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return incidentList;
     }
 
+    /**
+     * Visits the outgoing edges of V straight out of the adjacency set, without
+     * copying them into a list. Assumes V exists in this graph.
+     */
+    @Override
+    public void forEachNeighbor(Long v, EdgeVisitor<Long> visitor) {
+        for (WeightedEdge<Long> e : neighbors.get(v)) {
+            visitor.visit(e.from(), e.to(), e.weight());
+        }
+    }
+
     /**
      * Returns the great-circle distance between S and GOAL. Assumes
      * S and GOAL exist in this graph.
@@ -179,7 +191,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -227,6 +239,16 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return nodes.get(v).name();
     }
 
+    /** Returns the backing id-to-node map. Only for building derived graphs. */
+    Map<Long, Node> nodeMap() {
+        return nodes;
+    }
+
+    /** Returns the backing adjacency map. Only for building derived graphs. */
+    Map<Long, Set<WeightedEdge<Long>>> edgeMap() {
+        return neighbors;
+    }
+
     protected List<Node> getNodes() {
         List<Node> nodes = new ArrayList<>();
         for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
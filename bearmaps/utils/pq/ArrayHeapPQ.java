@@ -0,0 +1,107 @@
+package bearmaps.utils.pq;
+
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/* A PriorityQueue backed by an IndexedDoubleHeap. Each item is given a small int handle
+   when it is inserted; the heap itself only ever sees handles and double priorities, and
+   handles are recycled once their item is polled. changePriority is one map lookup plus
+   an in-place sift, with no wrapper objects allocated. */
+public class ArrayHeapPQ<T> implements PriorityQueue<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IndexedDoubleHeap heap;
+    private final HashMap<T, Integer> handles = new HashMap<>();
+    private Object[] items;
+
+    /* Handles freed by poll, reused before new ones are minted. */
+    private int[] freeHandles;
+    private int numFree;
+    private int nextHandle;
+
+    /* Initializes an empty ArrayHeapPQ using the default heap arity. */
+    public ArrayHeapPQ() {
+        this(IndexedDoubleHeap.DEFAULT_ARITY);
+    }
+
+    /* Initializes an empty ArrayHeapPQ whose heap has ARITY children per node. */
+    public ArrayHeapPQ(int arity) {
+        heap = new IndexedDoubleHeap(INITIAL_CAPACITY, arity);
+        items = new Object[INITIAL_CAPACITY];
+        freeHandles = new int[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public T peek() {
+        return item(heap.peek());
+    }
+
+    /* Inserts ITEM with the priority value PRIORITYVALUE. If ITEM is already in the PQ,
+       throw an IllegalArgumentException. */
+    @Override
+    public void insert(T item, double priorityValue) {
+        if (handles.containsKey(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        int handle;
+        if (numFree > 0) {
+            numFree--;
+            handle = freeHandles[numFree];
+        } else {
+            handle = nextHandle;
+            nextHandle++;
+            if (handle == items.length) {
+                Object[] grown = new Object[2 * items.length];
+                System.arraycopy(items, 0, grown, 0, items.length);
+                items = grown;
+                heap.ensureCapacity(grown.length);
+            }
+        }
+        items[handle] = item;
+        handles.put(item, handle);
+        heap.insert(handle, priorityValue);
+    }
+
+    @Override
+    public T poll() {
+        int handle = heap.poll();
+        T item = item(handle);
+        items[handle] = null;
+        handles.remove(item);
+        if (numFree == freeHandles.length) {
+            int[] grown = new int[2 * freeHandles.length];
+            System.arraycopy(freeHandles, 0, grown, 0, numFree);
+            freeHandles = grown;
+        }
+        freeHandles[numFree] = handle;
+        numFree++;
+        return item;
+    }
+
+    /* Changes the priority of ITEM to PRIORITYVALUE. If ITEM is not in the PQ, throw a
+       NoSuchElementException. */
+    @Override
+    public void changePriority(T item, double priorityValue) {
+        Integer handle = handles.get(item);
+        if (handle == null) {
+            throw new NoSuchElementException(item + " not in PQ.");
+        }
+        heap.changePriority(handle, priorityValue);
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return handles.containsKey(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int handle) {
+        return (T) items[handle];
+    }
+}
@@ -0,0 +1,105 @@
+package bearmaps.utils.pq;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/* A 4-ary min-heap of (int value, double priority) entries with no position index, for
+   searches that use lazy deletion: instead of decreasing a key, push the value again
+   with its better priority and skip the stale copies when they surface. The same value
+   may therefore appear several times. Backed by two growable primitive arrays. */
+public class LazyDoubleHeap {
+
+    private static final int ARITY = 4;
+
+    private int[] values;
+    private double[] keys;
+    private int size;
+
+    /* Initializes an empty heap with room for CAPACITY entries before it grows. */
+    public LazyDoubleHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        values = new int[capacity];
+        keys = new double[capacity];
+    }
+
+    /* Returns the number of entries, stale or not. */
+    public int size() {
+        return size;
+    }
+
+    /* Returns the value of the entry with the smallest priority without removing it. */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return values[0];
+    }
+
+    /* Returns the smallest priority in the heap. */
+    public double peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return keys[0];
+    }
+
+    /* Adds an entry for VALUE with priority PRIORITY. */
+    public void push(int value, double priority) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+            keys = Arrays.copyOf(keys, 2 * size);
+        }
+        int i = size;
+        size++;
+        while (i > 0) {
+            int parent = (i - 1) / ARITY;
+            if (keys[parent] <= priority) {
+                break;
+            }
+            values[i] = values[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        values[i] = value;
+        keys[i] = priority;
+    }
+
+    /* Removes the entry with the smallest priority and returns its value. */
+    public int poll() {
+        int min = peek();
+        size--;
+        if (size == 0) {
+            return min;
+        }
+        int value = values[size];
+        double priority = keys[size];
+        int i = 0;
+        while (true) {
+            int first = ARITY * i + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + ARITY, size);
+            int child = first;
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[child]) {
+                    child = c;
+                }
+            }
+            if (priority <= keys[child]) {
+                break;
+            }
+            values[i] = values[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        values[i] = value;
+        keys[i] = priority;
+        return min;
+    }
+
+    /* Removes every entry. */
+    public void clear() {
+        size = 0;
+    }
+}
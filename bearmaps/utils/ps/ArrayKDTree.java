@@ -0,0 +1,315 @@
+package bearmaps.utils.ps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* A balanced k-d tree stored implicitly in flat arrays, in Eytzinger (breadth-first)
+   order: the root is slot 0 and the children of slot i are slots 2i + 1 and 2i + 2, so
+   there are no node objects or child pointers. Slots at even depth split on x, odd depth
+   on y, and the left subtree of each slot is sized so the tree is complete.
+
+   Coordinates are projected once, with the Projection around the points' mean latitude,
+   and nearest() compares squared distances in that plane. The search walks the array
+   iteratively without a stack and allocates nothing. ids[slot] is the index in the
+   constructor's list of the point stored there, so callers that keep parallel arrays
+   (such as node ids) can use nearestIndex(). */
+public class ArrayKDTree implements IndexedPointSet {
+
+    /* Ranges with at least this many points are built as separate fork/join tasks. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /* Batch queries are handed to fork/join workers in runs of at most this many. */
+    private static final int BATCH_CHUNK = 1 << 12;
+
+    private final Point[] points;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+    private final Projection projection;
+
+    /* Bounding box of the projected points, for Morton codes. */
+    private double minX = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+
+    /* Constructs an ArrayKDTree over POINTS, which may be empty. */
+    public ArrayKDTree(List<Point> points) {
+        int n = points.size();
+        this.points = points.toArray(new Point[0]);
+        projection = Projection.around(points);
+
+        double[] px = new double[n];
+        double[] py = new double[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = projection.x(this.points[i].getX());
+            py[i] = projection.y(this.points[i].getY());
+            order[i] = i;
+            minX = Math.min(minX, px[i]);
+            maxX = Math.max(maxX, px[i]);
+            minY = Math.min(minY, py[i]);
+            maxY = Math.max(maxY, py[i]);
+        }
+        xs = new double[n];
+        ys = new double[n];
+        ids = new int[n];
+        ForkJoinPool.commonPool().invoke(new BuildTask(px, py, order, 0, 0, n, true));
+    }
+
+    /* Places the points ORDER[lo, hi) into the subtree rooted at SLOT, which splits on x
+       if ISX and on y otherwise. Reorders that range of ORDER in place. */
+    @SuppressWarnings("serial")
+    private class BuildTask extends RecursiveAction {
+        private final double[] px;
+        private final double[] py;
+        private final int[] order;
+        private final int slot;
+        private final int lo;
+        private final int hi;
+        private final boolean isX;
+
+        BuildTask(double[] px, double[] py, int[] order, int slot, int lo, int hi, boolean isX) {
+            this.px = px;
+            this.py = py;
+            this.order = order;
+            this.slot = slot;
+            this.lo = lo;
+            this.hi = hi;
+            this.isX = isX;
+        }
+
+        @Override
+        protected void compute() {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = lo + leftSize(hi - lo);
+            select(isX ? px : py, order, lo, hi - 1, mid);
+            int p = order[mid];
+            xs[slot] = px[p];
+            ys[slot] = py[p];
+            ids[slot] = p;
+            BuildTask left = new BuildTask(px, py, order, 2 * slot + 1, lo, mid, !isX);
+            BuildTask right = new BuildTask(px, py, order, 2 * slot + 2, mid + 1, hi, !isX);
+            if (hi - lo >= PARALLEL_THRESHOLD) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+        }
+    }
+
+    /* Returns how many of M nodes go in the left subtree of a complete binary tree. */
+    private static int leftSize(int m) {
+        if (m <= 1) {
+            return 0;
+        }
+        int height = 31 - Integer.numberOfLeadingZeros(m);
+        int half = 1 << (height - 1);
+        int lastLevel = m - (2 * half - 1);
+        return half - 1 + Math.min(lastLevel, half);
+    }
+
+    /* Rearranges ORDER[lo, hi] so that ORDER[k] is the index whose KEYS value would be
+       there if the range were sorted by KEYS, with no larger key before it and no smaller
+       one after it. Quickselect with a median-of-three pivot. */
+    private static void select(double[] keys, int[] order, int lo, int hi, int k) {
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[order[mid]] < keys[order[lo]]) {
+                swap(order, lo, mid);
+            }
+            if (keys[order[hi]] < keys[order[lo]]) {
+                swap(order, lo, hi);
+            }
+            if (keys[order[hi]] < keys[order[mid]]) {
+                swap(order, mid, hi);
+            }
+            double pivot = keys[order[mid]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(order, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    /* Batch form of nearestIndex: sets OUT[i] to nearestIndex(QXS[i], QYS[i]) for every i,
+       running on POOL.
+
+       Queries are first sorted along a Morton (Z-order) curve over the tree's bounding
+       box, so consecutive searches walk mostly the same slots and find them in cache.
+       The sorted queries are then split into chunks that POOL's workers solve
+       independently; the tree is read-only, so they share it without locking. */
+    @Override
+    public void nearestIndices(double[] qxs, double[] qys, int[] out, ForkJoinPool pool) {
+        if (qxs.length != qys.length || out.length < qxs.length) {
+            throw new IllegalArgumentException("Coordinate arrays must have equal lengths.");
+        }
+        int m = qxs.length;
+        if (m == 0) {
+            return;
+        }
+        if (ids.length == 0) {
+            Arrays.fill(out, 0, m, -1);
+            return;
+        }
+        pool.submit(() -> {
+            long[] keyed = new long[m];
+            for (int i = 0; i < m; i++) {
+                keyed[i] = ((mortonCode(qxs[i], qys[i]) & 0xFFFFFFFFL) << 32) | i;
+            }
+            Arrays.parallelSort(keyed);
+            new BatchTask(keyed, 0, m, qxs, qys, out).compute();
+        }).join();
+    }
+
+    /* Solves the queries keyed[lo, hi), splitting ranges larger than BATCH_CHUNK. */
+    @SuppressWarnings("serial")
+    private class BatchTask extends RecursiveAction {
+        private final long[] keyed;
+        private final int lo;
+        private final int hi;
+        private final double[] qxs;
+        private final double[] qys;
+        private final int[] out;
+
+        BatchTask(long[] keyed, int lo, int hi, double[] qxs, double[] qys, int[] out) {
+            this.keyed = keyed;
+            this.lo = lo;
+            this.hi = hi;
+            this.qxs = qxs;
+            this.qys = qys;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > BATCH_CHUNK) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new BatchTask(keyed, lo, mid, qxs, qys, out),
+                        new BatchTask(keyed, mid, hi, qxs, qys, out));
+                return;
+            }
+            for (int k = lo; k < hi; k++) {
+                int i = (int) keyed[k];
+                out[i] = nearestIndex(qxs[i], qys[i]);
+            }
+        }
+    }
+
+    /* Returns the Morton code of longitude X and latitude Y: both are quantized to 16 bits
+       across the tree's bounding box, clamped, and their bits interleaved. */
+    private int mortonCode(double x, double y) {
+        double fx = (projection.x(x) - minX) / (maxX - minX);
+        double fy = (projection.y(y) - minY) / (maxY - minY);
+        int qx = (int) (Math.min(Math.max(fx, 0), 1) * 0xFFFF);
+        int qy = (int) (Math.min(Math.max(fy, 0), 1) * 0xFFFF);
+        return spread(qx) | (spread(qy) << 1);
+    }
+
+    /* Spreads the low 16 bits of V out to the even bits of the result. */
+    private static int spread(int v) {
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    /* Returns the number of points. */
+    public int size() {
+        return ids.length;
+    }
+
+    /* Returns the closest Point to the inputted X (longitude) and Y (latitude), or null if
+       the tree is empty. */
+    @Override
+    public Point nearest(double x, double y) {
+        int index = nearestIndex(x, y);
+        return index < 0 ? null : points[index];
+    }
+
+    /* Returns the position in the constructor's list of the point closest to X (longitude)
+       and Y (latitude), or -1 if the tree is empty.
+
+       Walks the implicit tree without a stack. FROM is the slot the walk just came back up
+       from, or -1 on the way down. On the way down a slot is scored and the walk continues
+       into the child on the query's side; back from that child it crosses into the other
+       child only if the splitting line is closer than the best point so far; back from
+       the other child it returns to the parent. Children past the end of the array count
+       as visited immediately. */
+    @Override
+    public int nearestIndex(double x, double y) {
+        int n = ids.length;
+        if (n == 0) {
+            return -1;
+        }
+        double qx = projection.x(x);
+        double qy = projection.y(y);
+        int best = 0;
+        double bestDist = Double.POSITIVE_INFINITY;
+
+        int slot = 0;
+        int from = -1;
+        while (true) {
+            boolean isX = ((31 - Integer.numberOfLeadingZeros(slot + 1)) & 1) == 0;
+            double diff = isX ? qx - xs[slot] : qy - ys[slot];
+            int near = diff < 0 ? 2 * slot + 1 : 2 * slot + 2;
+            int next;
+            if (from == -1) {
+                double dx = qx - xs[slot];
+                double dy = qy - ys[slot];
+                double d = dx * dx + dy * dy;
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = slot;
+                }
+                next = near;
+            } else if (from == near && diff * diff < bestDist) {
+                next = near == 2 * slot + 1 ? near + 1 : near - 1;
+            } else {
+                next = -1;
+            }
+
+            if (next >= n) {
+                from = next;
+            } else if (next >= 0) {
+                slot = next;
+                from = -1;
+            } else if (slot == 0) {
+                return ids[best];
+            } else {
+                from = slot;
+                slot = (slot - 1) >> 1;
+            }
+        }
+    }
+}
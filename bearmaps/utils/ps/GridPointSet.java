@@ -0,0 +1,169 @@
+package bearmaps.utils.ps;
+
+import java.util.List;
+
+/* A uniform grid over the points, as an alternative to the k-d trees.
+
+   Coordinates are projected with the Projection around the points' mean latitude, as in
+   ArrayKDTree. The bounding box is cut into square cells sized so that each holds about
+   POINTS_PER_CELL points on average. The points are sorted by cell into flat coordinate
+   arrays, CSR style: the points in cell c are slots [cellStart[c],
+   cellStart[c + 1]), so a cell is scanned as one contiguous run of primitives. A query
+   scans rings of cells outward from its own cell and stops once the next ring cannot
+   hold anything closer than the best point so far. It allocates nothing. */
+public class GridPointSet implements IndexedPointSet {
+
+    /* Average number of points per cell the cell size is chosen for. */
+    private static final double POINTS_PER_CELL = 2;
+
+    private final Point[] points;
+    private final Projection projection;
+
+    /* Projected coordinates, in cell order; ids[slot] is the index in the constructor's
+       list of the point in that slot. */
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart;
+
+    /* Constructs a GridPointSet over POINTS, which may be empty. */
+    public GridPointSet(List<Point> points) {
+        int n = points.size();
+        this.points = points.toArray(new Point[0]);
+        projection = Projection.around(points);
+
+        double[] px = new double[n];
+        double[] py = new double[n];
+        double loX = Double.POSITIVE_INFINITY;
+        double loY = Double.POSITIVE_INFINITY;
+        double hiX = Double.NEGATIVE_INFINITY;
+        double hiY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            px[i] = projection.x(this.points[i].getX());
+            py[i] = projection.y(this.points[i].getY());
+            loX = Math.min(loX, px[i]);
+            hiX = Math.max(hiX, px[i]);
+            loY = Math.min(loY, py[i]);
+            hiY = Math.max(hiY, py[i]);
+        }
+
+        if (n == 0) {
+            minX = 0;
+            minY = 0;
+            cellSize = 1;
+            cols = 1;
+            rows = 1;
+        } else {
+            minX = loX;
+            minY = loY;
+            double width = Math.max(hiX - loX, 1e-9);
+            double height = Math.max(hiY - loY, 1e-9);
+            // roughly n / POINTS_PER_CELL cells, but never thinner than the bounding box
+            double size = Math.sqrt(width * height * POINTS_PER_CELL / n);
+            cellSize = Math.max(Math.min(size, Math.max(width, height)), 1e-9);
+            cols = (int) ((hiX - loX) / cellSize) + 1;
+            rows = (int) ((hiY - loY) / cellSize) + 1;
+        }
+
+        // counting sort of the points by cell
+        int[] cell = new int[n];
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < n; i++) {
+            cell[i] = row(py[i]) * cols + column(px[i]);
+            cellStart[cell[i] + 1]++;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        xs = new double[n];
+        ys = new double[n];
+        ids = new int[n];
+        int[] fill = new int[cols * rows];
+        for (int i = 0; i < n; i++) {
+            int slot = cellStart[cell[i]] + fill[cell[i]]++;
+            xs[slot] = px[i];
+            ys[slot] = py[i];
+            ids[slot] = i;
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(Math.max((int) Math.floor((x - minX) / cellSize), 0), cols - 1);
+    }
+
+    private int row(double y) {
+        return Math.min(Math.max((int) Math.floor((y - minY) / cellSize), 0), rows - 1);
+    }
+
+    /* Returns the number of points. */
+    public int size() {
+        return ids.length;
+    }
+
+    /* Returns the side of a grid cell in miles. */
+    public double cellSize() {
+        return cellSize;
+    }
+
+    /* Returns the closest Point to the inputted X (longitude) and Y (latitude), or null if
+       the set is empty. */
+    @Override
+    public Point nearest(double x, double y) {
+        int index = nearestIndex(x, y);
+        return index < 0 ? null : points[index];
+    }
+
+    /* Returns the position in the constructor's list of the point closest to X (longitude)
+       and Y (latitude), or -1 if the set is empty. */
+    @Override
+    public int nearestIndex(double x, double y) {
+        if (ids.length == 0) {
+            return -1;
+        }
+        double qx = projection.x(x);
+        double qy = projection.y(y);
+        // rings are centered on the grid cell nearest the query, and everything in the grid
+        // is at least as far from the query as from that cell's clamped point
+        int cx = column(qx);
+        int cy = row(qy);
+        double offX = qx - Math.min(Math.max(qx, minX), minX + cols * cellSize);
+        double offY = qy - Math.min(Math.max(qy, minY), minY + rows * cellSize);
+        double outside = offX * offX + offY * offY;
+        int lastRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int r = 0; r <= lastRing; r++) {
+            // every cell in ring r or beyond is at least (r - 1) cells from the query
+            double reach = Math.max(r - 1, 0) * cellSize;
+            if (best >= 0 && bestDist <= outside + reach * reach) {
+                break;
+            }
+            for (int row = Math.max(cy - r, 0); row <= Math.min(cy + r, rows - 1); row++) {
+                boolean edgeRow = row == cy - r || row == cy + r;
+                // whole top and bottom rows, only the two end cells of the others
+                int step = edgeRow ? 1 : 2 * r;
+                int first = edgeRow ? Math.max(cx - r, 0) : (cx - r >= 0 ? cx - r : cx + r);
+                for (int col = first; col <= Math.min(cx + r, cols - 1); col += step) {
+                    int c = row * cols + col;
+                    for (int slot = cellStart[c]; slot < cellStart[c + 1]; slot++) {
+                        double dx = qx - xs[slot];
+                        double dy = qy - ys[slot];
+                        double d = dx * dx + dy * dy;
+                        if (d < bestDist) {
+                            bestDist = d;
+                            best = slot;
+                        }
+                    }
+                }
+            }
+        }
+        return ids[best];
+    }
+}
@@ -0,0 +1,29 @@
+package bearmaps.utils.ps;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A PointSet that can also report which of its constructor's points is nearest by
+ * position, so callers keeping parallel arrays (such as node ids) need no Point lookup.
+ */
+public interface IndexedPointSet extends PointSet {
+
+    /**
+     * Returns the position in the constructor's list of the point closest to X (longitude)
+     * and Y (latitude), or -1 if the set is empty.
+     */
+    int nearestIndex(double x, double y);
+
+    /**
+     * Sets OUT[i] to nearestIndex(XS[i], YS[i]) for every i, running on POOL. The default
+     * just spreads the queries over POOL's workers.
+     */
+    default void nearestIndices(double[] xs, double[] ys, int[] out, ForkJoinPool pool) {
+        if (xs.length != ys.length || out.length < xs.length) {
+            throw new IllegalArgumentException("Coordinate arrays must have equal lengths.");
+        }
+        pool.submit(() -> IntStream.range(0, xs.length).parallel()
+                .forEach(i -> out[i] = nearestIndex(xs[i], ys[i]))).join();
+    }
+}
@@ -2,18 +2,160 @@ package bearmaps.utils.ps;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-public class KDTree implements PointSet {
+public class KDTree implements NearbyPointSet {
 
-    private KDTreeNode root;
+    /* Subtrees with at least this many points are built as separate fork/join tasks. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
 
-    /* Constructs a KDTree using POINTS. You can assume POINTS contains at least one
-       Point object. */
+    /* insert() rebuilds a subtree once one child holds more than this share of its nodes. */
+    private static final double ALPHA = 0.75;
+
+    /* Published nodes are never modified: insert() and delete() copy the path they change
+       and swap in the new root, so readers that loaded the old root see a consistent tree. */
+    private volatile KDTreeNode root;
+    private final Projection projection;
+
+    /* Constructs a balanced KDTree using POINTS. You can assume POINTS contains at least
+       one Point object. Each node splits its points at their median on its axis, found by
+       quickselect, so the depth is at most ceil(log2(N + 1)) whatever order POINTS is in.
+       Large subtrees are built in parallel on the common fork/join pool. */
     public KDTree(List<Point> points) {
-        this.root = null;
-        for (Point p : points) {
-            root = insert(p);
+        this.projection = Projection.around(points);
+        Point[] sorted = points.toArray(new Point[0]);
+        this.root = ForkJoinPool.commonPool().invoke(new BuildTask(sorted, 0, sorted.length, true));
+    }
+
+    /* Returns the number of points, not counting deleted ones. */
+    public int size() {
+        KDTreeNode r = root;
+        return r == null ? 0 : r.live;
+    }
+
+    /* Returns the number of nodes on the longest root-to-leaf path. */
+    public int depth() {
+        return depth(root);
+    }
+
+    private static int depth(KDTreeNode n) {
+        if (n == null) {
+            return 0;
+        }
+        return 1 + Math.max(depth(n.left), depth(n.right));
+    }
+
+    /* Builds the subtree of POINTS[lo, hi) that splits on x if ISLR and on y otherwise.
+       Reorders that range of POINTS in place. */
+    @SuppressWarnings("serial")
+    private class BuildTask extends RecursiveTask<KDTreeNode> {
+        private final Point[] points;
+        private final int lo;
+        private final int hi;
+        private final boolean isLR;
+
+        BuildTask(Point[] points, int lo, int hi, boolean isLR) {
+            this.points = points;
+            this.lo = lo;
+            this.hi = hi;
+            this.isLR = isLR;
+        }
+
+        @Override
+        protected KDTreeNode compute() {
+            if (lo >= hi) {
+                return null;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(points, lo, hi - 1, mid, isLR);
+            BuildTask left = new BuildTask(points, lo, mid, !isLR);
+            BuildTask right = new BuildTask(points, mid + 1, hi, !isLR);
+            KDTreeNode n = new KDTreeNode(points[mid], null, null, isLR);
+            n.size = hi - lo;
+            n.live = hi - lo;
+            if (hi - lo >= PARALLEL_THRESHOLD) {
+                left.fork();
+                n.right = right.compute();
+                n.left = left.join();
+            } else {
+                n.left = left.compute();
+                n.right = right.compute();
+            }
+            return n;
+        }
+    }
+
+    /* Rearranges POINTS[lo, hi] so that POINTS[k] holds the point that would be there if
+       the range were sorted by x (ISLR) or y, with no larger coordinate before it and no
+       smaller one after it. Quickselect with a median-of-three pivot. */
+    private static void select(Point[] points, int lo, int hi, int k, boolean isLR) {
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            if (coord(points[mid], isLR) < coord(points[lo], isLR)) {
+                swap(points, lo, mid);
+            }
+            if (coord(points[hi], isLR) < coord(points[lo], isLR)) {
+                swap(points, lo, hi);
+            }
+            if (coord(points[hi], isLR) < coord(points[mid], isLR)) {
+                swap(points, mid, hi);
+            }
+            double pivot = coord(points[mid], isLR);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coord(points[i], isLR) < pivot) {
+                    i++;
+                }
+                while (coord(points[j], isLR) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(points, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double coord(Point p, boolean isLR) {
+        return isLR ? p.getX() : p.getY();
+    }
+
+    private static void swap(Point[] points, int i, int j) {
+        Point tmp = points[i];
+        points[i] = points[j];
+        points[j] = tmp;
+    }
+
+    /* Inserts P. The nodes on the path to its new leaf are copied, and any subtree on that
+       path in which one child now holds more than ALPHA of the nodes is rebuilt balanced,
+       scapegoat style, dropping its deleted points. Writers are serialized; readers are
+       not blocked. */
+    public synchronized void insert(Point p) {
+        root = insertHelper(p, root, true);
+    }
+
+    /* Removes one point equal to P and returns true, or returns false if there is none.
+       The node is only marked deleted on a copied path, and queries skip it; once half of
+       the nodes are deleted the whole tree is rebuilt without them. */
+    public synchronized boolean delete(Point p) {
+        KDTreeNode r = root;
+        KDTreeNode updated = deleteHelper(p, r);
+        if (updated == r) {
+            return false;
         }
+        root = 2 * updated.live < updated.size ? rebuild(updated) : updated;
+        return true;
     }
 
     /*
@@ -22,75 +164,228 @@ public class KDTree implements PointSet {
     inspiration, take a look at how we do BST insertion!
      */
 
-    private KDTreeNode insert(Point p) {
-        return insertHelper(p, root, true);
-    }
-
     private KDTreeNode insertHelper(Point p, KDTreeNode n, boolean isLR) {
         if (n == null) {
-            n = new KDTreeNode(p, null, null, isLR);
-        } else if (Double.compare(p.getX(), n.point.getX()) < 0 && isLR) {
-            n.left = insertHelper(p, n.left, false);
-        } else if (Double.compare(p.getX(), n.point.getX()) >= 0 && isLR) {
-            n.right = insertHelper(p, n.right, false);
-        } else if (Double.compare(p.getY(), n.point.getY()) < 0 && !isLR) {
-            n.left = insertHelper(p, n.left, true);
-        } else if (Double.compare(p.getY(), n.point.getY()) >= 0 && !isLR) {
-            n.right = insertHelper(p, n.right, true);
+            return new KDTreeNode(p, null, null, isLR);
+        }
+        n = n.copy();
+        if (Double.compare(coord(p, n.orientation), coord(n.point, n.orientation)) < 0) {
+            n.left = insertHelper(p, n.left, !n.orientation);
+        } else {
+            n.right = insertHelper(p, n.right, !n.orientation);
+        }
+        n.size++;
+        n.live++;
+        if (Math.max(size(n.left), size(n.right)) > ALPHA * n.size) {
+            return rebuild(n);
+        }
+        return n;
+    }
+
+    /* Returns N, or a copy of the path to the node holding a live point equal to P with
+       that node marked deleted. Points equal to a node's split coordinate may be in
+       either of its subtrees. */
+    private KDTreeNode deleteHelper(Point p, KDTreeNode n) {
+        if (n == null || n.live == 0) {
+            return n;
+        }
+        if (!n.deleted && n.point.equals(p)) {
+            KDTreeNode copy = n.copy();
+            copy.deleted = true;
+            copy.live--;
+            return copy;
+        }
+        int cmp = Double.compare(coord(p, n.orientation), coord(n.point, n.orientation));
+        if (cmp <= 0) {
+            KDTreeNode left = deleteHelper(p, n.left);
+            if (left != n.left) {
+                KDTreeNode copy = n.copy();
+                copy.left = left;
+                copy.live--;
+                return copy;
+            }
+        }
+        if (cmp >= 0) {
+            KDTreeNode right = deleteHelper(p, n.right);
+            if (right != n.right) {
+                KDTreeNode copy = n.copy();
+                copy.right = right;
+                copy.live--;
+                return copy;
+            }
         }
         return n;
     }
 
+    /* Returns a balanced subtree of the live points under N, splitting first on N's axis. */
+    private KDTreeNode rebuild(KDTreeNode n) {
+        Point[] live = new Point[n.live];
+        collectLive(n, live, 0);
+        return ForkJoinPool.commonPool().invoke(new BuildTask(live, 0, live.length, n.orientation));
+    }
 
-    /* Returns the closest Point to the inputted X and Y coordinates. This method
-       should run in O(log N) time on average, where N is the number of POINTS. */
-    public Point nearest(double x, double y) {
-        Point goal = new Point(x, y);
-        if (goal == null || root == null) {
-            return null;
+    private static int collectLive(KDTreeNode n, Point[] out, int i) {
+        if (n == null || n.live == 0) {
+            return i;
         }
-        return nearestHelper(root, goal, root).point;
+        if (!n.deleted) {
+            out[i++] = n.point;
+        }
+        i = collectLive(n.left, out, i);
+        return collectLive(n.right, out, i);
     }
 
-    private KDTreeNode nearestHelper(KDTreeNode n, Point goal, KDTreeNode best) {
+    private static int size(KDTreeNode n) {
+        return n == null ? 0 : n.size;
+    }
 
-        KDTreeNode temp = new KDTreeNode(goal, null, null, false);
-        KDTreeNode goodSide = null;
-        KDTreeNode badSide = null;
 
-        if (n == null) {
+    /* Returns the closest Point to the inputted X and Y coordinates. This method
+       should run in O(log N) time on average, where N is the number of POINTS.
+       Compares squared distances in the tree's Projection, so it allocates nothing and
+       calls no trigonometry; the projection is monotone in each coordinate, so every
+       split is still a straight line in the plane. */
+    public Point nearest(double x, double y) {
+        KDTreeNode best = nearestHelper(root, projection.x(x), projection.y(y), null);
+        return best == null ? null : best.point;
+    }
+
+    private KDTreeNode nearestHelper(KDTreeNode n, double qx, double qy, KDTreeNode best) {
+        if (n == null || n.live == 0) {
             return best;
-        } else if (Point.distance(n.point, goal) < Point.distance(best.point, goal)) {
+        }
+        if (!n.deleted && (best == null
+                || n.squaredDistance(qx, qy) < best.squaredDistance(qx, qy))) {
             best = n;
         }
-
-        if (n.compare(n, temp) >= 0) {
-            goodSide = n.left();
-            badSide = n.right();
-        } else if (n.compare(n, temp) < 0) {
-            goodSide = n.right();
-            badSide = n.left();
+        double diff = n.orientation ? qx - n.px : qy - n.py;
+        KDTreeNode goodSide = diff <= 0 ? n.left : n.right;
+        KDTreeNode badSide = diff <= 0 ? n.right : n.left;
+        best = nearestHelper(goodSide, qx, qy, best);
+
+        //if the splitting line is closer than the best so far, check the bad side
+        if (best == null || diff * diff < best.squaredDistance(qx, qy)) {
+            best = nearestHelper(badSide, qx, qy, best);
         }
+        return best;
+    }
 
-        best = nearestHelper(goodSide, goal, best);
+    /* Writes the K points closest to X and Y into OUT, nearest first, with their distances
+       in DISTS. While searching, OUT[0, size) and DISTS[0, size) hold a max-heap of the
+       best points so far, keyed on squared distance in the Projection like nearest(), so a
+       subtree is skipped once its splitting line is farther than the worst of K points
+       found. Only the K results get their great-circle distance computed. */
+    @Override
+    public int kNearest(double x, double y, int k, Point[] out, double[] dists) {
+        if (k > out.length || k > dists.length) {
+            throw new IllegalArgumentException("Buffers hold fewer than " + k + " points.");
+        }
+        if (k <= 0) {
+            return 0;
+        }
+        int size = kNearestHelper(root, projection.x(x), projection.y(y), k, out, dists, 0);
+        // heap sort in place: move the farthest point to the end until the heap is empty
+        for (int end = size - 1; end > 0; end--) {
+            swap(out, dists, 0, end);
+            siftDown(out, dists, 0, end);
+        }
+        for (int i = 0; i < size; i++) {
+            dists[i] = Point.distance(out[i].getX(), x, out[i].getY(), y);
+        }
+        return size;
+    }
 
-        //if it has something useful then check bad side
-        Double bestDistance = Point.distance(best.point, goal);
-        Point badDest;
+    private int kNearestHelper(KDTreeNode n, double qx, double qy, int k, Point[] heap,
+                               double[] dists, int size) {
+        if (n == null || n.live == 0) {
+            return size;
+        }
+        if (!n.deleted) {
+            size = offer(n.point, n.squaredDistance(qx, qy), k, heap, dists, size);
+        }
 
-        if (!n.orientation) {
-            badDest = new Point(goal.getX(), n.point.getY());
-        } else {
-            badDest = new Point(n.point.getX(), goal.getY());
+        double diff = n.orientation ? qx - n.px : qy - n.py;
+        KDTreeNode goodSide = diff <= 0 ? n.left : n.right;
+        KDTreeNode badSide = diff <= 0 ? n.right : n.left;
+        size = kNearestHelper(goodSide, qx, qy, k, heap, dists, size);
+        if (size < k || diff * diff < dists[0]) {
+            size = kNearestHelper(badSide, qx, qy, k, heap, dists, size);
         }
+        return size;
+    }
 
-        Double otherDistance = Point.distance(badDest, goal);
+    /* Adds P at distance D to the max-heap HEAP[0, size) of at most K points, replacing
+       the farthest if it is full and P is closer, and returns the new size. */
+    private static int offer(Point p, double d, int k, Point[] heap, double[] dists, int size) {
+        if (size < k) {
+            // sift the new point up from the end of the heap
+            int i = size;
+            while (i > 0 && dists[(i - 1) / 2] < d) {
+                heap[i] = heap[(i - 1) / 2];
+                dists[i] = dists[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = p;
+            dists[i] = d;
+            return size + 1;
+        }
+        if (d < dists[0]) {
+            heap[0] = p;
+            dists[0] = d;
+            siftDown(heap, dists, 0, size);
+        }
+        return size;
+    }
 
-        if (otherDistance < bestDistance) {
-            best = nearestHelper(badSide, goal, best);
+    /* Restores the max-heap order of HEAP[0, size) below slot I. */
+    private static void siftDown(Point[] heap, double[] dists, int i, int size) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && dists[child + 1] > dists[child]) {
+                child++;
+            }
+            if (dists[i] >= dists[child]) {
+                return;
+            }
+            swap(heap, dists, i, child);
+            i = child;
         }
-        return best;
+    }
 
+    private static void swap(Point[] heap, double[] dists, int i, int j) {
+        swap(heap, i, j);
+        double tmp = dists[i];
+        dists[i] = dists[j];
+        dists[j] = tmp;
+    }
+
+    /* Appends every point within R of X and Y to OUT, skipping a subtree whenever its
+       splitting line is farther than R. Like nearest(), compares squared distances in the
+       Projection, which is in miles, against R squared; that agrees with great-circle
+       distance except for points within a hair of the circle. */
+    @Override
+    public int withinRadius(double x, double y, double r, List<Point> out) {
+        return withinRadiusHelper(root, projection.x(x), projection.y(y), r * r, out);
+    }
+
+    private int withinRadiusHelper(KDTreeNode n, double qx, double qy, double r2,
+                                   List<Point> out) {
+        if (n == null || n.live == 0) {
+            return 0;
+        }
+        int found = 0;
+        if (!n.deleted && n.squaredDistance(qx, qy) <= r2) {
+            out.add(n.point);
+            found++;
+        }
+        double diff = n.orientation ? qx - n.px : qy - n.py;
+        KDTreeNode goodSide = diff <= 0 ? n.left : n.right;
+        KDTreeNode badSide = diff <= 0 ? n.right : n.left;
+        found += withinRadiusHelper(goodSide, qx, qy, r2, out);
+        if (diff * diff <= r2) {
+            found += withinRadiusHelper(badSide, qx, qy, r2, out);
+        }
+        return found;
     }
 
     private class KDTreeNode implements Comparator<KDTreeNode> {
@@ -99,18 +394,27 @@ public class KDTree implements PointSet {
         private KDTreeNode left;
         private KDTreeNode right;
         private boolean orientation; // if x comparison = true, if y comparison = false
+        private final double px; // point's coordinates in the tree's projection
+        private final double py;
+        private int size; // nodes in this subtree, including deleted ones
+        private int live; // nodes in this subtree that are not deleted
+        private boolean deleted;
 
         // If you want to add any more instance variables, put them here!
 
         KDTreeNode(Point p) {
-            this.point = p;
+            this(p, null, null, false);
         }
 
         KDTreeNode(Point p, KDTreeNode left, KDTreeNode right, boolean orientation) {
             this.point = p;
+            this.px = projection.x(p.getX());
+            this.py = projection.y(p.getY());
             this.left = left;
             this.right = right;
             this.orientation = orientation;
+            this.size = 1 + size(left) + size(right);
+            this.live = 1 + (left == null ? 0 : left.live) + (right == null ? 0 : right.live);
 
         }
 
@@ -144,5 +448,21 @@ public class KDTree implements PointSet {
 
         // If you want to add any more methods, put them here!
 
+        /* Returns an unpublished copy of this node that may be modified. */
+        KDTreeNode copy() {
+            KDTreeNode n = new KDTreeNode(point, left, right, orientation);
+            n.size = size;
+            n.live = live;
+            n.deleted = deleted;
+            return n;
+        }
+
+        /* Returns the squared distance in the plane from (QX, QY) to this node's point. */
+        double squaredDistance(double qx, double qy) {
+            double dx = qx - px;
+            double dy = qy - py;
+            return dx * dx + dy * dy;
+        }
+
     }
 }
@@ -0,0 +1,24 @@
+package bearmaps.utils.ps;
+
+import java.util.List;
+
+/**
+ * A PointSet that can also list the points near a location, for snapping noisy positions
+ * and showing nearby places. Only implementations that answer these queries declare it.
+ */
+public interface NearbyPointSet extends PointSet {
+
+    /**
+     * Writes the K points closest to X (longitude) and Y (latitude) into OUT, nearest
+     * first, and their great-circle distances in miles into the same slots of DISTS.
+     * Returns how many were written, which is less than K only if the set is smaller.
+     * OUT and DISTS must hold at least K entries; nothing else is allocated.
+     */
+    int kNearest(double x, double y, int k, Point[] out, double[] dists);
+
+    /**
+     * Appends to OUT, in no particular order, every point within great-circle distance R
+     * miles of X (longitude) and Y (latitude), and returns how many were appended.
+     */
+    int withinRadius(double x, double y, double r, List<Point> out);
+}
@@ -0,0 +1,71 @@
+package bearmaps.utils.ps;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PointSet implementations AugmentedStreetMapGraph can answer closest() with.
+ */
+public enum PointSetType {
+    /** Flat, implicit-layout k-d tree (ArrayKDTree). */
+    ARRAY_KD_TREE,
+    /** Pointer-based k-d tree (KDTree). */
+    KD_TREE,
+    /**
+     * KDTree that AugmentedStreetMapGraph keeps updatable, so nodes can be added to and
+     * removed from closest() while the server runs. Built here, it behaves like KD_TREE.
+     */
+    DYNAMIC_KD_TREE,
+    /** Uniform grid of packed buckets (GridPointSet). */
+    GRID,
+    /** The reference WeirdPointSet. */
+    WEIRD;
+
+    /**
+     * Returns a new PointSet of this type over POINTS. POINTS is not modified. Types that
+     * only return Points are wrapped so that nearestIndex() looks the Point up by identity.
+     */
+    public IndexedPointSet build(List<Point> points) {
+        switch (this) {
+            case KD_TREE:
+            case DYNAMIC_KD_TREE:
+                return new LookupPointSet(new KDTree(points), points);
+            case GRID:
+                return new GridPointSet(points);
+            case WEIRD:
+                // WeirdPointSet shuffles the list it is given
+                return new LookupPointSet(new WeirdPointSet(new ArrayList<>(points)), points);
+            case ARRAY_KD_TREE:
+            default:
+                return new ArrayKDTree(points);
+        }
+    }
+
+    /* Adapts a PointSet over POINTS to IndexedPointSet with an identity map from each
+       Point to its position in POINTS. */
+    private static class LookupPointSet implements IndexedPointSet {
+        private final PointSet set;
+        private final Map<Point, Integer> index;
+
+        LookupPointSet(PointSet set, List<Point> points) {
+            this.set = set;
+            index = new IdentityHashMap<>(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                index.put(points.get(i), i);
+            }
+        }
+
+        @Override
+        public Point nearest(double x, double y) {
+            return set.nearest(x, y);
+        }
+
+        @Override
+        public int nearestIndex(double x, double y) {
+            Point p = set.nearest(x, y);
+            return p == null ? -1 : index.get(p);
+        }
+    }
+}
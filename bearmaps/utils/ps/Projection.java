@@ -0,0 +1,57 @@
+package bearmaps.utils.ps;
+
+import java.util.List;
+
+/**
+ * Local equirectangular projection of longitude and latitude onto a plane measured in
+ * miles, scaled so that east-west distances are right at a reference latitude.
+ *
+ * Over the few miles of a city map, squared distances in this plane rank points the same
+ * as great-circle distance except for near-ties, and cost a couple of multiplications
+ * instead of the trigonometry in Point.distance. Both axes are monotone in longitude and
+ * latitude, so a k-d tree split on raw coordinates is also a valid split in the plane.
+ */
+public class Projection {
+
+    /** Radius of the earth in miles, as in Point.distance. */
+    public static final double EARTH_RADIUS = 3963;
+
+    /** Miles per degree of latitude. */
+    public static final double MILES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private final double xScale;
+
+    /** Creates the projection that is exact east-west at latitude LAT0. */
+    public Projection(double lat0) {
+        xScale = MILES_PER_DEGREE * Math.cos(Math.toRadians(lat0));
+    }
+
+    /** Returns the projection around the mean latitude of POINTS, or the equator if empty. */
+    public static Projection around(List<Point> points) {
+        double meanLat = 0;
+        for (Point p : points) {
+            meanLat += p.getY() / points.size();
+        }
+        return new Projection(meanLat);
+    }
+
+    /** Returns the plane x coordinate, in miles, of longitude LON. */
+    public double x(double lon) {
+        return lon * xScale;
+    }
+
+    /** Returns the plane y coordinate, in miles, of latitude LAT. */
+    public double y(double lat) {
+        return lat * MILES_PER_DEGREE;
+    }
+
+    /** Returns the longitude of plane x coordinate X. */
+    public double lon(double x) {
+        return x / xScale;
+    }
+
+    /** Returns the latitude of plane y coordinate Y. */
+    public double lat(double y) {
+        return y / MILES_PER_DEGREE;
+    }
+}
@@ -58,6 +58,10 @@ $(function() {
     const route_server = host + '/route';
     const clear_route = host + '/clear_route';
     const search = host + '/search';
+    /* Most suggestions to ask for while typing; the server returns the most common first. */
+    const suggestion_limit = 10;
+    /* Typos tolerated in suggestions, asked for only when no name starts with the text. */
+    const suggestion_typos = 2;
 
     /* ════════════════════════════ ೋღ HELPERS ღೋ ══════════════════════════ */
     /* Compute lat and lon by window size */
@@ -325,7 +329,31 @@ $(function() {
 
     /* Make search bar do autocomplete things */
     $('#tags').autocomplete({
-          source: search,
+          source: function (request, respond) {
+              const exact = { term: request.term, limit: suggestion_limit };
+              $.get({
+                  async: true,
+                  url: search,
+                  dataType: 'json',
+                  data: exact,
+                  success: function(data) {
+                      if (data.length > 0) {
+                          respond(data);
+                          return;
+                      }
+                      /* Nothing starts with the text, so it probably has a typo */
+                      $.get({
+                          async: true,
+                          url: search,
+                          dataType: 'json',
+                          data: $.extend({ fuzzy: suggestion_typos }, exact),
+                          success: respond,
+                          error: function() { respond([]); },
+                      });
+                  },
+                  error: function() { respond([]); },
+              });
+          },
           minLength: 2,
           select: function (event, ui) {
               $.get({